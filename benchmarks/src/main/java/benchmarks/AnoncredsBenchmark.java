@@ -0,0 +1,277 @@
+package benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.hyperledger.indy.sdk.anoncreds.AnoncredsResults;
+import org.hyperledger.indy.sdk.blob_storage.BlobStorageReader;
+import org.hyperledger.indy.sdk.blob_storage.BlobStorageWriter;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hyperledger.indy.sdk.anoncreds.Anoncreds.*;
+
+/**
+ * Anoncreds.demo, howto.NegotiateProof와 같은 issue -> prove -> verify 경로의 각 단계를 측정한다.
+ * 속성 수, predicate 수, revocation 사용 여부를 파라미터로 바꿔가며 처리량과 지연시간 분포(SampleTime)를 함께 본다.
+ * 렛저에서 읽어오던 객체는 LocalLedger가 대신 제공하므로 indy pool 없이 실행된다.
+ * issueCredential은 revocation 인덱스를 계속 소비하므로 iteration마다 새 registry(IssuanceRegistry)에 발행한다.
+ *
+ * 실행: mvn clean install (상위 프로젝트) 후 benchmarks 디렉토리에서
+ *   mvn clean package && java -jar target/benchmarks.jar
+ * 상위 프로젝트에서 mvn -Pbenchmarks compile 로 벤치마크 소스까지 함께 컴파일해 볼 수 있다.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+public class AnoncredsBenchmark {
+
+	private static final String ISSUER_DID = "NcYxiDXkpYi6ov5FcYDi1e";
+	private static final String PROVER_DID = "VsKV7grR1BUE29mG2Fm2kX";
+	private static final int MAX_CRED_NUM = 16_384;
+
+	@Param({"4", "16", "64"})
+	public int attributeCount;
+
+	@Param({"0", "1", "4"})
+	public int predicateCount;
+
+	@Param({"false", "true"})
+	public boolean revocation;
+
+	/** issueCredential이 쓰는 registry. 한 iteration 동안의 발행이 MAX_CRED_NUM을 넘지 않도록 iteration마다 새로 만든다. */
+	@State(Scope.Benchmark)
+	public static class IssuanceRegistry {
+		String revRegId;
+		int tailsReaderHandle = -1;
+
+		@Setup(Level.Iteration)
+		public void setUp(AnoncredsBenchmark benchmark) throws Exception {
+			if (benchmark.revocation) {
+				Registry registry = benchmark.createRegistry();
+				revRegId = registry.revRegId;
+				tailsReaderHandle = registry.tailsReaderHandle;
+			}
+		}
+	}
+
+	private static class Registry {
+		final String revRegId;
+		final String revRegDefJson;
+		final String revRegEntryJson;
+		final int tailsReaderHandle;
+
+		Registry(String revRegId, String revRegDefJson, String revRegEntryJson, int tailsReaderHandle) {
+			this.revRegId = revRegId;
+			this.revRegDefJson = revRegDefJson;
+			this.revRegEntryJson = revRegEntryJson;
+			this.tailsReaderHandle = tailsReaderHandle;
+		}
+	}
+
+	private final LocalLedger ledger = new LocalLedger();
+	private final AtomicInteger registryCount = new AtomicInteger();
+	// tearDown에서 지울 tails 디렉토리
+	private final List<File> tailsDirs = new CopyOnWriteArrayList<>();
+	private String suffix;
+
+	private String issuerWalletConfig;
+	private String proverWalletConfig;
+	private String walletCredentials;
+	private Wallet issuerWallet;
+	private Wallet proverWallet;
+
+	private String credDefId;
+	private String revRegId;
+	private int tailsReaderHandle = -1;
+	private String masterSecretId;
+	private String credOffer;
+	private String credReqJson;
+	private String credValuesJson;
+	private String proofRequestJson;
+	private String requestedCredentialsJson;
+	private String revocStatesJson;
+	private String proofJson;
+	// 벤치마크에서 JSON 직렬화 시간이 측정되지 않도록 setup에서 미리 만들어 둔다.
+	private String schemasJson;
+	private String credDefsJson;
+	private String revocRegDefsJson;
+	private String revocRegsJson;
+
+	@Setup
+	public void setUp() throws Exception {
+		suffix = String.valueOf(System.nanoTime());
+		issuerWalletConfig = new JSONObject().put("id", "benchIssuerWallet" + suffix).toString();
+		proverWalletConfig = new JSONObject().put("id", "benchProverWallet" + suffix).toString();
+		walletCredentials = new JSONObject().put("key", "bench_wallet_key").toString();
+		Wallet.createWallet(issuerWalletConfig, walletCredentials).get();
+		issuerWallet = Wallet.openWallet(issuerWalletConfig, walletCredentials).get();
+		Wallet.createWallet(proverWalletConfig, walletCredentials).get();
+		proverWallet = Wallet.openWallet(proverWalletConfig, walletCredentials).get();
+
+		//Issuer -> Schema, Credential definition (, Revocation registry)
+		JSONArray attributes = new JSONArray();
+		JSONObject values = new JSONObject();
+		for (int i = 0; i < attributeCount; i++) {
+			attributes.put("attr" + i);
+			values.put("attr" + i, new JSONObject().put("raw", String.valueOf(20 + i)).put("encoded", String.valueOf(20 + i)));
+		}
+		credValuesJson = values.toString();
+
+		AnoncredsResults.IssuerCreateSchemaResult schema =
+				issuerCreateSchema(ISSUER_DID, "bench", "1.0", attributes.toString()).get();
+		ledger.putSchema(schema.getSchemaId(), schema.getSchemaJson());
+
+		String credDefConfigJson = new JSONObject().put("support_revocation", revocation).toString();
+		AnoncredsResults.IssuerCreateAndStoreCredentialDefResult credDef =
+				issuerCreateAndStoreCredentialDef(issuerWallet, ISSUER_DID, schema.getSchemaJson(), "bench", null, credDefConfigJson).get();
+		credDefId = credDef.getCredDefId();
+		ledger.putCredDef(credDefId, credDef.getCredDefJson());
+
+		long timestamp = System.currentTimeMillis() / 1000;
+		String revRegEntryJson = null;
+		if (revocation) {
+			// proof 준비용 registry. 여기서는 VC 하나만 발행한다.
+			Registry registry = createRegistry();
+			revRegId = registry.revRegId;
+			revRegEntryJson = registry.revRegEntryJson;
+			tailsReaderHandle = registry.tailsReaderHandle;
+			ledger.putRevocRegDef(revRegId, registry.revRegDefJson);
+			// ISSUANCE_BY_DEFAULT 이므로 발행으로는 accumulator가 바뀌지 않는다. 초기 entry가 곧 현재 registry 값이다.
+			ledger.putRevocReg(revRegId, timestamp, revRegEntryJson);
+		}
+
+		//Prover -> Credential 발급 받아 저장
+		masterSecretId = proverCreateMasterSecret(proverWallet, null).get();
+		credOffer = issuerCreateCredentialOffer(issuerWallet, credDefId).get();
+		AnoncredsResults.ProverCreateCredentialRequestResult credReq =
+				proverCreateCredentialReq(proverWallet, PROVER_DID, credOffer, credDef.getCredDefJson(), masterSecretId).get();
+		credReqJson = credReq.getCredentialRequestJson();
+
+		AnoncredsResults.IssuerCreateCredentialResult credential =
+				issuerCreateCredential(issuerWallet, credOffer, credReqJson, credValuesJson, revRegId, tailsReaderHandle).get();
+		String credId = proverStoreCredential(proverWallet, null, credReq.getCredentialRequestMetadataJson(),
+				credential.getCredentialJson(), credDef.getCredDefJson(), revocation ? ledger.getRevocRegDef(revRegId) : null).get();
+
+		//Verifier -> Proof request, Prover -> requested credentials
+		int predicates = Math.min(predicateCount, attributeCount);
+		JSONObject requestedAttributes = new JSONObject();
+		JSONObject requestedPredicates = new JSONObject();
+		JSONObject credentialsForAttributes = new JSONObject();
+		JSONObject credentialsForPredicates = new JSONObject();
+		for (int i = 0; i < attributeCount - predicates; i++) {
+			requestedAttributes.put("attr" + i + "_referent", new JSONObject().put("name", "attr" + i));
+			JSONObject requested = new JSONObject().put("cred_id", credId).put("revealed", true);
+			credentialsForAttributes.put("attr" + i + "_referent", revocation ? requested.put("timestamp", timestamp) : requested);
+		}
+		for (int i = attributeCount - predicates; i < attributeCount; i++) {
+			requestedPredicates.put("predicate" + i + "_referent", new JSONObject()
+					.put("name", "attr" + i).put("p_type", ">=").put("p_value", 18));
+			JSONObject requested = new JSONObject().put("cred_id", credId);
+			credentialsForPredicates.put("predicate" + i + "_referent", revocation ? requested.put("timestamp", timestamp) : requested);
+		}
+		JSONObject proofRequest = new JSONObject()
+				.put("nonce", generateNonce().get())
+				.put("name", "bench_proof_req")
+				.put("version", "0.1")
+				.put("requested_attributes", requestedAttributes)
+				.put("requested_predicates", requestedPredicates);
+		if (revocation) {
+			proofRequest.put("non_revoked", new JSONObject().put("to", timestamp));
+		}
+		proofRequestJson = proofRequest.toString();
+		requestedCredentialsJson = new JSONObject()
+				.put("self_attested_attributes", new JSONObject())
+				.put("requested_attributes", credentialsForAttributes)
+				.put("requested_predicates", credentialsForPredicates)
+				.toString();
+
+		if (revocation) {
+			String revStateJson = createRevocationState(tailsReaderHandle, ledger.getRevocRegDef(revRegId), revRegEntryJson,
+					timestamp, credential.getRevocId()).get();
+			revocStatesJson = new JSONObject().put(revRegId, new JSONObject().put(String.valueOf(timestamp), new JSONObject(revStateJson))).toString();
+		} else {
+			revocStatesJson = new JSONObject().toString();
+		}
+
+		schemasJson = ledger.schemasJson();
+		credDefsJson = ledger.credDefsJson();
+		revocRegDefsJson = ledger.revocRegDefsJson();
+		revocRegsJson = ledger.revocRegsJson();
+
+		proofJson = createProof();
+		if (!verifyProof()) {
+			throw new IllegalStateException("벤치마크 준비 중 생성한 proof 검증 실패");
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws Exception {
+		issuerWallet.closeWallet().get();
+		Wallet.deleteWallet(issuerWalletConfig, walletCredentials).get();
+		proverWallet.closeWallet().get();
+		Wallet.deleteWallet(proverWalletConfig, walletCredentials).get();
+		for (File tailsDir : tailsDirs) {
+			FileUtils.deleteQuietly(tailsDir);
+		}
+		tailsDirs.clear();
+	}
+
+	@Benchmark
+	public String issueCredential(IssuanceRegistry registry) throws Exception {
+		return issuerCreateCredential(issuerWallet, credOffer, credReqJson, credValuesJson, registry.revRegId, registry.tailsReaderHandle).get()
+				.getCredentialJson();
+	}
+
+	@Benchmark
+	public String createProof() throws Exception {
+		return proverCreateProof(proverWallet, proofRequestJson, requestedCredentialsJson, masterSecretId,
+				schemasJson, credDefsJson, revocStatesJson).get();
+	}
+
+	@Benchmark
+	public boolean verifyProof() throws Exception {
+		return verifierVerifyProof(proofRequestJson, proofJson, schemasJson, credDefsJson, revocRegDefsJson, revocRegsJson).get();
+	}
+
+	// 새 tails 디렉토리에 MAX_CRED_NUM 크기의 ISSUANCE_BY_DEFAULT registry를 만든다. 같은 credDef 안에서 tag가 겹치지 않게 번호를 붙인다.
+	private Registry createRegistry() throws Exception {
+		int number = registryCount.incrementAndGet();
+		File tailsDir = new File(System.getProperty("java.io.tmpdir"), "indy-bench-tails-" + suffix + "-" + number);
+		tailsDirs.add(tailsDir);
+		String tailsConfig = new JSONObject()
+				.put("base_dir", tailsDir.getAbsolutePath().replace('\\', '/'))
+				.put("uri_pattern", "")
+				.toString();
+		String revRegDefConfig = new JSONObject()
+				.put("issuance_type", "ISSUANCE_BY_DEFAULT")
+				.put("max_cred_num", MAX_CRED_NUM)
+				.toString();
+		BlobStorageWriter tailsWriter = BlobStorageWriter.openWriter("default", tailsConfig).get();
+		AnoncredsResults.IssuerCreateAndStoreRevocRegResult revReg =
+				issuerCreateAndStoreRevocReg(issuerWallet, ISSUER_DID, "CL_ACCUM", "bench" + number, credDefId, revRegDefConfig, tailsWriter).get();
+		int readerHandle = BlobStorageReader.openReader("default", tailsConfig).get().getBlobStorageReaderHandle();
+		return new Registry(revReg.getRevRegId(), revReg.getRevRegDefJson(), revReg.getRevRegEntryJson(), readerHandle);
+	}
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 벤치마크용 렛저 대역. 이슈어가 만든 Schema, CredDef, RevocRegDef, RevocReg를 메모리에 보관하고
+ * prover/verifier가 렛저에서 읽어오던 JSON 맵 형태로 돌려준다. 네트워크 없이 재현 가능한 결과를 얻기 위함.
+ */
+class LocalLedger {
+
+	private final Map<String, String> schemas = new ConcurrentHashMap<>();
+	private final Map<String, String> credDefs = new ConcurrentHashMap<>();
+	private final Map<String, String> revocRegDefs = new ConcurrentHashMap<>();
+	private final Map<String, Map<Long, String>> revocRegs = new ConcurrentHashMap<>();
+
+	void putSchema(String schemaId, String schemaJson) {
+		schemas.put(schemaId, schemaJson);
+	}
+
+	void putCredDef(String credDefId, String credDefJson) {
+		credDefs.put(credDefId, credDefJson);
+	}
+
+	void putRevocRegDef(String revRegId, String revRegDefJson) {
+		revocRegDefs.put(revRegId, revRegDefJson);
+	}
+
+	void putRevocReg(String revRegId, long timestamp, String revRegJson) {
+		revocRegs.computeIfAbsent(revRegId, id -> new ConcurrentHashMap<>()).put(timestamp, revRegJson);
+	}
+
+	String getRevocRegDef(String revRegId) {
+		return revocRegDefs.get(revRegId);
+	}
+
+	String schemasJson() {
+		return toJson(schemas);
+	}
+
+	String credDefsJson() {
+		return toJson(credDefs);
+	}
+
+	String revocRegDefsJson() {
+		return toJson(revocRegDefs);
+	}
+
+	String revocRegsJson() {
+		JSONObject json = new JSONObject();
+		for (Map.Entry<String, Map<Long, String>> revocReg : revocRegs.entrySet()) {
+			JSONObject byTimestamp = new JSONObject();
+			for (Map.Entry<Long, String> entry : revocReg.getValue().entrySet()) {
+				byTimestamp.put(String.valueOf(entry.getKey()), new JSONObject(entry.getValue()));
+			}
+			json.put(revocReg.getKey(), byTimestamp);
+		}
+		return json.toString();
+	}
+
+	private static String toJson(Map<String, String> objects) {
+		JSONObject json = new JSONObject();
+		for (Map.Entry<String, String> entry : objects.entrySet()) {
+			json.put(entry.getKey(), new JSONObject(entry.getValue()));
+		}
+		return json.toString();
+	}
+}
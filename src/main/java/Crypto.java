@@ -1,3 +1,4 @@
+import howto.MessageCryptoPipeline;
 import org.hyperledger.indy.sdk.pool.Pool;
 import org.hyperledger.indy.sdk.did.DidResults.CreateAndStoreMyDidResult;
 import org.hyperledger.indy.sdk.crypto.CryptoResults.AuthDecryptResult;
@@ -7,6 +8,8 @@ import org.junit.Assert;
 import utils.PoolUtils;
 
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 
 import static org.hyperledger.indy.sdk.did.Did.*;
 import static org.hyperledger.indy.sdk.crypto.Crypto.*;
@@ -63,6 +66,16 @@ class Crypto {
 		Assert.assertTrue(Arrays.equals(msg.getBytes(), authDecryptResult.getDecryptedMessage()));
 		Assert.assertEquals(theirVerkey, authDecryptResult.getVerkey());
 
+		// 7-1. Their auth encrypt many messages through the pipeline
+		MessageCryptoPipeline pipeline = new MessageCryptoPipeline(theirWallet, theirVerkey);
+		List<MessageCryptoPipeline.EncryptedMessage> encryptedMessages = pipeline.encryptAll(IntStream.range(0, 1000)
+				.mapToObj(i -> new MessageCryptoPipeline.Message(myVerkey, msg)));
+		pipeline.shutdown();
+		System.out.println("Pipeline latency: " + pipeline.getLatency());
+
+		AuthDecryptResult pipelineDecryptResult = authDecrypt(myWallet, myVerkey, encryptedMessages.get(0).getEncrypted()).get();
+		Assert.assertTrue(Arrays.equals(msg.getBytes(), pipelineDecryptResult.getDecryptedMessage()));
+
 		// 8. Close and delete My Wallet
 		myWallet.closeWallet().get();
 		Wallet.deleteWallet(myWalletConfig, myWalletCredentials).get();
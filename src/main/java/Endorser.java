@@ -1,3 +1,4 @@
+import howto.EndorsementQueue;
 import org.hyperledger.indy.sdk.anoncreds.AnoncredsResults;
 import org.hyperledger.indy.sdk.pool.Pool;
 import org.hyperledger.indy.sdk.wallet.Wallet;
@@ -6,16 +7,16 @@ import org.hyperledger.indy.sdk.did.DidJSONParameters;
 import org.hyperledger.indy.sdk.did.DidResults.CreateAndStoreMyDidResult;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
 import utils.PoolUtils;
 
 import java.util.Arrays;
+import java.util.Collections;
 
 import static org.hyperledger.indy.sdk.ledger.Ledger.buildNymRequest;
 import static org.hyperledger.indy.sdk.ledger.Ledger.buildSchemaRequest;
 import static org.hyperledger.indy.sdk.ledger.Ledger.signAndSubmitRequest;
-import static org.hyperledger.indy.sdk.ledger.Ledger.submitRequest;
-import static org.hyperledger.indy.sdk.ledger.Ledger.multiSignRequest;
-import static org.hyperledger.indy.sdk.ledger.Ledger.appendRequestEndorser;
 import static org.hyperledger.indy.sdk.anoncreds.Anoncreds.issuerCreateSchema;
 import static org.junit.Assert.assertEquals;
 
@@ -91,21 +92,18 @@ class Endorser {
         //  Transaction Author builds Schema Request
         String schemaRequest = buildSchemaRequest(authorDid, schemaJson).get();
 
-        //  Transaction Author appends Endorser's DID into the request
-        String schemaRequestWithEndorser = appendRequestEndorser(schemaRequest, endorserDid).get();
-
-        //  Transaction Author signs the request with the added endorser field
+        //  Transaction Author appends Endorser's DID into the request and signs it
+        EndorsementQueue endorsementQueue = new EndorsementQueue(LedgerSubmitter.of(pool), endorserWallet, Collections.singletonList(endorserDid));
         String schemaRequestWithEndorserAuthorSigned =
-                multiSignRequest(authorWallet, authorDid, schemaRequestWithEndorser).get();
-
-        //  Transaction Endorser signs the request
-        String schemaRequestWithEndorserSigned =
-                multiSignRequest(endorserWallet, endorserDid, schemaRequestWithEndorserAuthorSigned).get();
-
-        //  Transaction Endorser sends the request
-        String response = submitRequest(pool, schemaRequestWithEndorserSigned).get();
-        JSONObject responseJson = new JSONObject(response);
-        assertEquals("REPLY", responseJson.getString("op"));
+                EndorsementQueue.prepare(authorWallet, authorDid, schemaRequest, endorsementQueue.nextEndorserDid()).get();
+
+        //  Transaction Endorser signs the request and sends it
+        EndorsementQueue.Endorsement endorsement = endorsementQueue.submit(schemaRequestWithEndorserAuthorSigned);
+        String response = endorsement.getResult().get();
+        assertEquals("REPLY", LedgerResponse.op(response));
+        assertEquals(EndorsementQueue.State.WRITTEN, endorsement.getState());
+        System.out.println(endorsementQueue);
+        endorsementQueue.shutdown();
 
         pool.closePoolLedger().get();
         Pool.deletePoolLedgerConfig(poolName).get();
@@ -4,7 +4,8 @@ import org.hyperledger.indy.sdk.did.DidJSONParameters;
 import org.hyperledger.indy.sdk.did.DidResults.CreateAndStoreMyDidResult;
 import org.hyperledger.indy.sdk.wallet.Wallet;
 import org.json.JSONObject;
-import utils.PoolUtils;
+import utils.PoolRegistry;
+import utils.WalletRegistry;
 
 import static org.hyperledger.indy.sdk.ledger.Ledger.buildNymRequest;
 import static org.hyperledger.indy.sdk.ledger.Ledger.signAndSubmitRequest;
@@ -22,21 +23,24 @@ class Ledger {
 		// Set protocol version 2 to work with Indy Node 1.4
 		Pool.setProtocolVersion(PROTOCOL_VERSION).get();
 
-		// 1. Create ledger config from genesis txn file
-		String poolName = PoolUtils.createPoolLedgerConfig();
-		Pool pool = Pool.openPoolLedger(poolName, "{}").get();
+		// 1. Open pool through the shared registry (ledger config is created from genesis txn file if absent)
+		String poolName = "ledger_sample_pool";
+		PoolRegistry poolRegistry = PoolRegistry.getInstance();
+		PoolRegistry.PoolLease poolLease = poolRegistry.acquire(poolName);
+		Pool pool = poolLease.getPool();
 
 		// 2. Create and Open My Wallet
 		String myWalletConfig = new JSONObject().put("id", "myWallet").toString();
 		String myWalletCredentials = new JSONObject().put("key", "my_wallet_key").toString();
-		Wallet.createWallet(myWalletConfig, myWalletCredentials).get();
-		Wallet myWallet = Wallet.openWallet(myWalletConfig, myWalletCredentials).get();
+		WalletRegistry walletRegistry = new WalletRegistry(4, 60_000);
+		WalletRegistry.WalletLease myWalletLease = walletRegistry.acquire(myWalletConfig, myWalletCredentials);
+		Wallet myWallet = myWalletLease.getWallet();
 
 		// 3. Create and Open Trustee Wallet
 		String trusteeWalletConfig = new JSONObject().put("id", "theirWallet").toString();
 		String trusteeWalletCredentials = new JSONObject().put("key", "trustee_wallet_key").toString();
-		Wallet.createWallet(trusteeWalletConfig, trusteeWalletCredentials).get();
-		Wallet trusteeWallet = Wallet.openWallet(trusteeWalletConfig, trusteeWalletCredentials).get();
+		WalletRegistry.WalletLease trusteeWalletLease = walletRegistry.acquire(trusteeWalletConfig, trusteeWalletCredentials);
+		Wallet trusteeWallet = trusteeWalletLease.getWallet();
 
 		// 4. Create My Did
 		CreateAndStoreMyDidResult createMyDidResult = Did.createAndStoreMyDid(myWallet, "{}").get();
@@ -61,16 +65,19 @@ class Ledger {
 		assertEquals(myDid, nymResponse.getJSONObject("result").getJSONObject("txn").getJSONObject("data").getString("dest"));
 		assertEquals(myVerkey, nymResponse.getJSONObject("result").getJSONObject("txn").getJSONObject("data").getString("verkey"));
 
-		// 8. Close and delete My Wallet
-		myWallet.closeWallet().get();
-		Wallet.deleteWallet(myWalletConfig, myWalletCredentials).get();
+		// 8. Release leases and close wallets
+		myWalletLease.close();
+		trusteeWalletLease.close();
+		walletRegistry.shutdown();
 
-		// 9. Close and delete Their Wallet
-		trusteeWallet.closeWallet().get();
+		// 9. Delete My Wallet and Their Wallet
+		Wallet.deleteWallet(myWalletConfig, myWalletCredentials).get();
 		Wallet.deleteWallet(trusteeWalletConfig, trusteeWalletCredentials).get();
 
-		// 10. Close Pool
-		pool.closePoolLedger().get();
+		// 10. Release and close Pool
+		poolLease.close();
+		System.out.println("Pool stats: " + poolRegistry.getStats(poolName));
+		poolRegistry.shutdown();
 
 		// 11. Delete Pool ledger config
 		Pool.deletePoolLedgerConfig(poolName).get();
@@ -0,0 +1,166 @@
+package howto;
+
+import org.hyperledger.indy.sdk.pool.Pool;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import utils.IndyFutures;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+
+/**
+ * 다수의 (DID, verkey, role)을 steward DID로 렛저에 등록한다.
+ * IndyUtil.sendNymAsync로 build -> sign -> submit을 이어서 실행하고, 동시에 진행중인 요청 수를 maxInFlight로 제한한다.
+ * 창이 가득 차면 submit을 호출한 스레드가 대기하므로 steward 지갑의 서명 대기열도 maxInFlight 이상 쌓이지 않는다.
+ * 재시도는 자리(permit)를 유지한 채로 진행되어 재시도가 몰려도 처리량이 튀지 않는다.
+ */
+public class BatchNymOnboarding {
+
+    private static final long RETRY_INITIAL_BACKOFF = 200;
+    // PoolUtils의 재전송 간격 상한과 같다.
+    private static final long RETRY_MAX_BACKOFF = 5_000;
+
+    public static class NymEntry {
+        private final String did;
+        private final String verkey;
+        private final String role;
+
+        public NymEntry(String did, String verkey, String role) {
+            this.did = did;
+            this.verkey = verkey;
+            this.role = role;
+        }
+
+        public String getDid() {
+            return did;
+        }
+
+        public String getVerkey() {
+            return verkey;
+        }
+
+        public String getRole() {
+            return role;
+        }
+    }
+
+    public static class NymResult {
+        private final NymEntry entry;
+        private final String response;
+        private final Throwable error;
+        private final int attempts;
+
+        NymResult(NymEntry entry, String response, Throwable error, int attempts) {
+            this.entry = entry;
+            this.response = response;
+            this.error = error;
+            this.attempts = attempts;
+        }
+
+        public NymEntry getEntry() {
+            return entry;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public String getResponse() {
+            return response;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+
+    private final LedgerSubmitter ledger;
+    private final Wallet stewardWallet;
+    private final String stewardDid;
+    private final int maxRetries;
+    private final Semaphore window;
+
+    public BatchNymOnboarding(Pool pool, Wallet stewardWallet, String stewardDid, int maxInFlight, int maxRetries) {
+        this(LedgerSubmitter.of(pool), stewardWallet, stewardDid, maxInFlight, maxRetries);
+    }
+
+    public BatchNymOnboarding(LedgerSubmitter ledger, Wallet stewardWallet, String stewardDid, int maxInFlight, int maxRetries) {
+        this.ledger = ledger;
+        this.stewardWallet = stewardWallet;
+        this.stewardDid = stewardDid;
+        this.maxRetries = maxRetries;
+        this.window = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * 모든 항목을 등록하고 입력 순서대로 결과를 반환한다. 실패한 항목도 결과에 포함된다.
+     */
+    public List<NymResult> onboard(Stream<NymEntry> entries) throws InterruptedException {
+        List<CompletableFuture<NymResult>> pending = new ArrayList<>();
+        Iterator<NymEntry> iterator = entries.iterator();
+        while (iterator.hasNext()) {
+            pending.add(submit(iterator.next()));
+        }
+
+        List<NymResult> results = new ArrayList<>(pending.size());
+        for (CompletableFuture<NymResult> result : pending) {
+            results.add(result.join());
+        }
+        return results;
+    }
+
+    /**
+     * 항목 하나를 파이프라인에 넣는다. 진행중인 요청이 maxInFlight개이면 자리가 날 때까지 대기한다.
+     * 반환된 future는 실패시에도 예외 없이 NymResult로 완료된다.
+     */
+    public CompletableFuture<NymResult> submit(NymEntry entry) throws InterruptedException {
+        window.acquire();
+        CompletableFuture<NymResult> result = new CompletableFuture<>();
+        attempt(entry, 1, RETRY_INITIAL_BACKOFF, result);
+        return result.whenComplete((nymResult, error) -> window.release());
+    }
+
+    private void attempt(NymEntry entry, int attempt, long backoff, CompletableFuture<NymResult> result) {
+        IndyUtil.sendNymAsync(ledger, stewardWallet, stewardDid, entry.getDid(), entry.getVerkey(), entry.getRole())
+                .whenComplete((response, error) -> {
+                    try {
+                        Throwable failure = error != null ? error : checkReply(response);
+                        if (failure == null) {
+                            result.complete(new NymResult(entry, response, null, attempt));
+                        } else if (attempt <= maxRetries && isRetryable(response)) {
+                            // 같이 실패한 요청들이 한꺼번에 다시 몰리지 않도록 backoff/2 ~ backoff 사이에서 고른다.
+                            long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+                            long nextBackoff = Math.min(backoff * 2, RETRY_MAX_BACKOFF);
+                            IndyFutures.delay(delay).thenRun(() -> attempt(entry, attempt + 1, nextBackoff, result));
+                        } else {
+                            result.complete(new NymResult(entry, response, failure, attempt));
+                        }
+                    } catch (RuntimeException e) {
+                        result.complete(new NymResult(entry, response, e, attempt));
+                    }
+                });
+    }
+
+    private static Throwable checkReply(String response) {
+        String op = LedgerResponse.op(response);
+        if ("REPLY".equals(op)) {
+            return null;
+        }
+        return new IllegalStateException("NYM 등록 실패 (" + op + "): " + response);
+    }
+
+    // REJECT는 권한 없음 등 다시 보내도 같은 결과가 나오므로 재시도하지 않는다. REQNACK이나 타임아웃 등은 재시도한다.
+    private static boolean isRetryable(String response) {
+        return response == null || !"REJECT".equals(LedgerResponse.op(response));
+    }
+}
@@ -0,0 +1,152 @@
+package howto;
+
+import org.hyperledger.indy.sdk.anoncreds.Anoncreds;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import utils.IndyFutures;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * cred def별로 미리 만들어 둔 credential offer를 poolSize개씩 유지한다.
+ * issuerCreateCredentialOffer는 nonce와 key correctness proof를 만드느라 handshake마다 지연을 더하므로,
+ * 요청 경로에서는 큐에서 꺼내기만 하고 빈 자리는 백그라운드에서 채운다.
+ * offer는 한 번만 사용되고 offerTtl이 지난 offer는 버린다. 큐가 비어 있으면 그 자리에서 만든다.
+ */
+public class CredentialOfferPool {
+
+    private static class Offer {
+        final String offerJson;
+        final long createdAt = System.currentTimeMillis();
+
+        Offer(String offerJson) {
+            this.offerJson = offerJson;
+        }
+    }
+
+    private static class Offers {
+        final ArrayDeque<Offer> ready = new ArrayDeque<>();
+        boolean refilling;
+    }
+
+    private final Wallet issuerWallet;
+    private final int poolSize;
+    private final long offerTtl;
+    private final ConcurrentHashMap<String, Offers> offers = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private volatile boolean shutdown;
+
+    public CredentialOfferPool(Wallet issuerWallet, int poolSize, long offerTtl) {
+        this.issuerWallet = issuerWallet;
+        this.poolSize = poolSize;
+        this.offerTtl = offerTtl;
+        scheduleSweep();
+    }
+
+    /** cred def를 등록하고 offer를 채우기 시작한다. take에서 처음 보는 cred def도 자동으로 등록된다. */
+    public void register(String credDefId) {
+        refill(credDefId, offers.computeIfAbsent(credDefId, id -> new Offers()));
+    }
+
+    public String take(String credDefId) throws ExecutionException, InterruptedException {
+        return IndyFutures.get(takeAsync(credDefId));
+    }
+
+    /** 준비된 offer가 있으면 바로 완료된 future를, 없으면 새로 만드는 future를 반환한다. */
+    public CompletableFuture<String> takeAsync(String credDefId) {
+        Offers pooled = offers.computeIfAbsent(credDefId, id -> new Offers());
+        Offer offer = poll(pooled);
+        refill(credDefId, pooled);
+        if (offer != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(offer.offerJson);
+        }
+        misses.incrementAndGet();
+        return IndyFutures.call(() -> Anoncreds.issuerCreateCredentialOffer(issuerWallet, credDefId));
+    }
+
+    public int getReadyCount(String credDefId) {
+        Offers pooled = offers.get(credDefId);
+        if (pooled == null) {
+            return 0;
+        }
+        synchronized (pooled) {
+            return pooled.ready.size();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    private Offer poll(Offers pooled) {
+        long now = System.currentTimeMillis();
+        synchronized (pooled) {
+            Offer offer;
+            while ((offer = pooled.ready.pollFirst()) != null) {
+                if (now - offer.createdAt < offerTtl) {
+                    return offer;
+                }
+                expired.incrementAndGet();
+            }
+            return null;
+        }
+    }
+
+    // cred def마다 한번에 하나씩만 만들며 poolSize개가 될 때까지 이어서 채운다.
+    private void refill(String credDefId, Offers pooled) {
+        synchronized (pooled) {
+            if (shutdown || pooled.refilling || pooled.ready.size() >= poolSize) {
+                return;
+            }
+            pooled.refilling = true;
+        }
+        IndyFutures.call(() -> Anoncreds.issuerCreateCredentialOffer(issuerWallet, credDefId))
+                .whenComplete((offerJson, error) -> {
+                    synchronized (pooled) {
+                        pooled.refilling = false;
+                        if (error != null) {
+                            System.err.println("credential offer 생성 실패 (" + credDefId + "): " + error);
+                            return;
+                        }
+                        pooled.ready.addLast(new Offer(offerJson));
+                    }
+                    refill(credDefId, pooled);
+                });
+    }
+
+    private void scheduleSweep() {
+        IndyFutures.delay(Math.max(offerTtl / 2, 1_000)).thenRun(() -> {
+            if (shutdown) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            offers.forEach((credDefId, pooled) -> {
+                synchronized (pooled) {
+                    int before = pooled.ready.size();
+                    pooled.ready.removeIf(offer -> now - offer.createdAt >= offerTtl);
+                    expired.addAndGet(before - pooled.ready.size());
+                }
+                refill(credDefId, pooled);
+            });
+            scheduleSweep();
+        });
+    }
+}
@@ -0,0 +1,165 @@
+package howto;
+
+import org.hyperledger.indy.sdk.anoncreds.CredentialsSearchForProofReq;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.IndyFutures;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+/**
+ * proof request의 referent마다 사용할 credential을 CredentialsSearchForProofReq로 골라낸다.
+ * 모든 referent를 동시에 조회하고, 큰 지갑도 끝까지 넘길 수 있도록 배치 크기를 늘려가며(INITIAL_BATCH → MAX_BATCH) 페이지를 넘기다가
+ * 선택 정책(Policy)이 만족되면 더 읽지 않는다. 검색 핸들은 성공/실패와 관계없이 결과를 돌려주기 전에 닫는다.
+ *
+ * 결과는 referent → 선택된 credential({"cred_info": ..., "interval": ...}) 이며, 맞는 credential이 없는 referent는 포함되지 않는다.
+ */
+public class CredentialSelector {
+
+    private static final int INITIAL_BATCH = 8;
+    private static final int MAX_BATCH = 256;
+
+    /**
+     * 선택 정책. filter를 통과한 credential 중 첫번째(first) 또는 cred_info 기준으로 가장 큰 것(highest, newest)을 고른다.
+     * 지갑 검색 결과의 순서는 보장되지 않으므로 순서가 필요하면 credential에 담긴 값으로 비교해야 한다.
+     * highest와 newest는 모든 페이지를 읽어야 하고, first는 첫 후보에서 멈춘다.
+     */
+    public static class Policy {
+        private final Predicate<JSONObject> filter;
+        // cred_info 비교. null이면 첫 후보를 고른다.
+        private final Comparator<JSONObject> order;
+
+        private Policy(Predicate<JSONObject> filter, Comparator<JSONObject> order) {
+            this.filter = filter;
+            this.order = order;
+        }
+
+        public static Policy first() {
+            return new Policy(credential -> true, null);
+        }
+
+        /** credInfoOrder로 비교해서 가장 큰 cred_info를 고른다. 같으면 먼저 읽은 것을 쓴다. */
+        public static Policy highest(Comparator<JSONObject> credInfoOrder) {
+            return new Policy(credential -> true, credInfoOrder);
+        }
+
+        /**
+         * 발급 시각 등 정수 값을 담은 속성(timestampAttribute)이 가장 큰 credential을 고른다.
+         * 속성이 없거나 정수가 아닌 credential은 가장 오래된 것으로 본다.
+         */
+        public static Policy newest(String timestampAttribute) {
+            return highest(Comparator.comparingLong(credInfo -> longAttribute(credInfo, timestampAttribute)));
+        }
+
+        /** cred_info에 대한 조건을 추가한다. (예: 특정 cred_def_id, issuer만 허용) */
+        public Policy matching(Predicate<JSONObject> credInfoFilter) {
+            return new Policy(filter.and(credential -> credInfoFilter.test(credential.getJSONObject("cred_info"))), order);
+        }
+
+        /** 폐기된 것으로 알려진 credential(rev_reg_id + ":" + cred_rev_id)은 제외한다. */
+        public Policy nonRevoked(Set<String> revokedCredentials) {
+            return matching(credInfo -> credInfo.isNull("rev_reg_id")
+                    || !revokedCredentials.contains(credInfo.getString("rev_reg_id") + ":" + credInfo.optString("cred_rev_id")));
+        }
+    }
+
+    public static Map<String, JSONObject> select(Wallet wallet, String proofRequestJson, String extraQueryJson, Policy policy) throws ExecutionException, InterruptedException {
+        return IndyFutures.get(selectAsync(wallet, proofRequestJson, extraQueryJson, policy));
+    }
+
+    public static CompletableFuture<Map<String, JSONObject>> selectAsync(Wallet wallet, String proofRequestJson, String extraQueryJson, Policy policy) {
+        JSONObject proofRequest = new JSONObject(proofRequestJson);
+        List<String> referents = new ArrayList<>();
+        for (String section : new String[]{"requested_attributes", "requested_predicates"}) {
+            JSONObject requested = proofRequest.optJSONObject(section);
+            if (requested != null) {
+                referents.addAll(requested.keySet());
+            }
+        }
+
+        return IndyFutures.call(() -> CredentialsSearchForProofReq.open(wallet, proofRequestJson, extraQueryJson))
+                .thenCompose(search -> {
+                    Map<String, CompletableFuture<JSONObject>> scans = new LinkedHashMap<>();
+                    for (String referent : referents) {
+                        scans.put(referent, scan(search, referent, policy, INITIAL_BATCH, null));
+                    }
+                    CompletableFuture<Map<String, JSONObject>> selected = CompletableFuture.allOf(scans.values().toArray(new CompletableFuture[0]))
+                            .thenApply(ignored -> {
+                                Map<String, JSONObject> result = new LinkedHashMap<>();
+                                scans.forEach((referent, scan) -> {
+                                    JSONObject credential = scan.join();
+                                    if (credential != null) {
+                                        result.put(referent, credential);
+                                    }
+                                });
+                                return result;
+                            });
+                    return closeAfter(search, selected);
+                });
+    }
+
+    /** 선택된 credential의 지갑 내 id (requested credentials의 cred_id) */
+    public static String credentialId(JSONObject credential) {
+        return credential.getJSONObject("cred_info").getString("referent");
+    }
+
+    private static CompletableFuture<JSONObject> scan(CredentialsSearchForProofReq search, String referent, Policy policy, int batch, JSONObject chosen) {
+        return IndyFutures.call(() -> search.fetchNextCredentials(referent, batch))
+                .thenCompose(pageJson -> {
+                    JSONArray page = new JSONArray(pageJson);
+                    JSONObject best = chosen;
+                    for (int i = 0; i < page.length(); i++) {
+                        JSONObject credential = page.getJSONObject(i);
+                        if (!policy.filter.test(credential)) {
+                            continue;
+                        }
+                        if (policy.order == null) {
+                            return CompletableFuture.completedFuture(credential);
+                        }
+                        if (best == null || policy.order.compare(credential.getJSONObject("cred_info"), best.getJSONObject("cred_info")) > 0) {
+                            best = credential;
+                        }
+                    }
+                    if (page.length() < batch) {
+                        return CompletableFuture.completedFuture(best);
+                    }
+                    return scan(search, referent, policy, Math.min(batch * 2, MAX_BATCH), best);
+                });
+    }
+
+    private static long longAttribute(JSONObject credInfo, String name) {
+        JSONObject attrs = credInfo.optJSONObject("attrs");
+        String value = attrs == null ? null : attrs.optString(name, null);
+        if (value == null) {
+            return Long.MIN_VALUE;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private static <T> CompletableFuture<T> closeAfter(CredentialsSearchForProofReq search, CompletableFuture<T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        work.whenComplete((value, error) -> IndyFutures.call(search::closeSearch).whenComplete((ignored, closeError) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (closeError != null) {
+                result.completeExceptionally(closeError);
+            } else {
+                result.complete(value);
+            }
+        }));
+        return result;
+    }
+}
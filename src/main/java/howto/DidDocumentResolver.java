@@ -0,0 +1,277 @@
+package howto;
+
+import org.hyperledger.indy.sdk.ledger.Ledger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.IndyFutures;
+import utils.IndyMetrics;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * DID의 NYM(verkey, role)과 ATTRIB(endpoint, service 등)을 모아 DID document 하나로 만든다.
+ * GET_NYM과 속성별 GET_ATTRIB을 동시에 보내고, 결과는 ttlMillis 동안 캐시한다.
+ * 같은 DID에 대한 동시 조회는 진행중인 조회 하나를 공유하고, 실패한 조회는 캐시하지 않는다. REPLY가 아닌 응답이 하나라도 있으면 실패다.
+ * 캐시는 maxEntries개까지 보관하고, 넘으면 가장 오래 사용되지 않은 DID부터 지운다.
+ * 라우팅 계층처럼 메시지마다 service endpoint가 필요한 곳은 resolveAllAsync로 여러 DID를 한번에 조회하면 된다.
+ */
+public class DidDocumentResolver {
+
+    // UpdateDIDdocument가 쓰는 service 속성과 libindy getEndpointForDid가 보는 endpoint 속성
+    private static final List<String> DEFAULT_ATTRIBUTES = Arrays.asList("endpoint", "service");
+
+    public static class DidDocument {
+        private final String did;
+        private final String verkey;
+        private final String role;
+        private final Map<String, JSONObject> attributes;
+
+        DidDocument(String did, String verkey, String role, Map<String, JSONObject> attributes) {
+            this.did = did;
+            this.verkey = verkey;
+            this.role = role;
+            this.attributes = Collections.unmodifiableMap(attributes);
+        }
+
+        public String getDid() {
+            return did;
+        }
+
+        public String getVerkey() {
+            return verkey;
+        }
+
+        /** 일반 사용자 DID면 null */
+        public String getRole() {
+            return role;
+        }
+
+        /** 속성 이름 → ATTRIB raw 값. 렛저에 없는 속성은 들어있지 않다. 반환된 객체는 캐시와 공유되므로 수정하지 않는다. */
+        public Map<String, JSONObject> getAttributes() {
+            return attributes;
+        }
+
+        /** service.serviceEndpoint, 없으면 endpoint.ha. 둘 다 없으면 null */
+        public String getServiceEndpoint() {
+            JSONObject service = attributes.get("service");
+            if (service != null && service.optJSONObject("service") != null) {
+                String serviceEndpoint = service.getJSONObject("service").optString("serviceEndpoint", null);
+                if (serviceEndpoint != null) {
+                    return serviceEndpoint;
+                }
+            }
+            JSONObject endpoint = attributes.get("endpoint");
+            if (endpoint != null && endpoint.optJSONObject("endpoint") != null) {
+                return endpoint.getJSONObject("endpoint").optString("ha", null);
+            }
+            return null;
+        }
+
+        public String toJson() {
+            String id = did.startsWith("did:") ? did : "did:sov:" + did;
+            JSONObject document = new JSONObject()
+                    .put("id", id)
+                    .put("verificationMethod", new JSONArray().put(new JSONObject()
+                            .put("id", id + "#key-1")
+                            .put("type", "Ed25519VerificationKey2018")
+                            .put("controller", id)
+                            .put("publicKeyBase58", verkey)));
+            String serviceEndpoint = getServiceEndpoint();
+            if (serviceEndpoint != null) {
+                document.put("service", new JSONArray().put(new JSONObject()
+                        .put("id", id + "#did-communication")
+                        .put("type", "did-communication")
+                        .put("serviceEndpoint", serviceEndpoint)));
+            }
+            return document.toString();
+        }
+    }
+
+    private static class Entry {
+        final CompletableFuture<DidDocument> future = new CompletableFuture<>();
+        // 로드가 끝난 뒤에 설정된다. 그 전에는 Long.MAX_VALUE
+        volatile long expiresAt = Long.MAX_VALUE;
+    }
+
+    private final LedgerSubmitter ledger;
+    private final String submitterDid;
+    private final List<String> attributeNames;
+    private final long ttlMillis;
+    // 접근 순서 LinkedHashMap. entries로 동기화한다.
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public DidDocumentResolver(LedgerSubmitter ledger, String submitterDid) {
+        this(ledger, submitterDid, DEFAULT_ATTRIBUTES, 60 * 1000, 10_000);
+    }
+
+    /**
+     * @param submitterDid   GET 요청자 DID. null이면 libindy가 임의로 채운다.
+     * @param attributeNames DID마다 GET_ATTRIB으로 조회할 raw 속성 이름
+     * @param ttlMillis      조회 결과를 재사용하는 시간
+     * @param maxEntries     캐시할 최대 DID 수
+     */
+    public DidDocumentResolver(LedgerSubmitter ledger, String submitterDid, List<String> attributeNames, long ttlMillis, int maxEntries) {
+        this.ledger = ledger;
+        this.submitterDid = submitterDid;
+        this.attributeNames = new ArrayList<>(attributeNames);
+        this.ttlMillis = ttlMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DidDocumentResolver.Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public DidDocument resolve(String did) throws ExecutionException, InterruptedException {
+        return IndyFutures.get(resolveAsync(did));
+    }
+
+    /**
+     * 캐시에 있고 TTL이 지나지 않았으면 캐시된 document를, 아니면 렛저에서 다시 조회한다.
+     * DID가 렛저에 없으면 IllegalStateException으로 실패한다.
+     */
+    public CompletableFuture<DidDocument> resolveAsync(String did) {
+        Entry entry;
+        boolean created = false;
+        synchronized (entries) {
+            entry = entries.get(did);
+            if (entry == null || entry.expiresAt <= System.currentTimeMillis()) {
+                entry = new Entry();
+                entries.put(did, entry);
+                created = true;
+            }
+        }
+        if (created) {
+            misses.incrementAndGet();
+            load(did, entry);
+        } else {
+            hits.incrementAndGet();
+        }
+        return entry.future.thenApply(Function.identity());
+    }
+
+    public Map<String, DidDocument> resolveAll(Collection<String> dids) throws ExecutionException, InterruptedException {
+        return IndyFutures.get(resolveAllAsync(dids));
+    }
+
+    /**
+     * 여러 DID를 동시에 조회한다. 결과는 입력 순서의 DID → document이고, 조회에 실패한 DID는 빠진다.
+     */
+    public CompletableFuture<Map<String, DidDocument>> resolveAllAsync(Collection<String> dids) {
+        Map<String, CompletableFuture<DidDocument>> pending = new LinkedHashMap<>();
+        for (String did : dids) {
+            pending.put(did, resolveAsync(did).handle((document, error) -> document));
+        }
+        return CompletableFuture.allOf(pending.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<String, DidDocument> documents = new LinkedHashMap<>();
+            pending.forEach((did, future) -> {
+                DidDocument document = future.join();
+                if (document != null) {
+                    documents.put(did, document);
+                }
+            });
+            return documents;
+        });
+    }
+
+    /** NYM이나 ATTRIB을 새로 쓴 DID는 TTL을 기다리지 않도록 지운다. */
+    public void invalidate(String did) {
+        synchronized (entries) {
+            entries.remove(did);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DidDocumentResolver{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "}";
+    }
+
+    private void load(String did, Entry entry) {
+        CompletableFuture<String> nym = IndyMetrics.call("buildGetNymRequest", () -> Ledger.buildGetNymRequest(submitterDid, did))
+                .thenCompose(ledger::submitRequest);
+        Map<String, CompletableFuture<String>> attributes = new LinkedHashMap<>();
+        for (String name : attributeNames) {
+            attributes.put(name, IndyMetrics.call("buildGetAttribRequest", () -> Ledger.buildGetAttribRequest(submitterDid, did, name, null, null))
+                    .thenCompose(ledger::submitRequest));
+        }
+
+        List<CompletableFuture<String>> reads = new ArrayList<>(attributes.values());
+        reads.add(nym);
+        CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0]))
+                .thenApply(done -> assemble(did, nym.join(), attributes))
+                .whenComplete((document, error) -> {
+                    if (error != null) {
+                        synchronized (entries) {
+                            entries.remove(did, entry);
+                        }
+                        entry.future.completeExceptionally(error);
+                        return;
+                    }
+                    entry.expiresAt = System.currentTimeMillis() + ttlMillis;
+                    entry.future.complete(document);
+                });
+    }
+
+    private static DidDocument assemble(String did, String getNymResponse, Map<String, CompletableFuture<String>> attributes) {
+        checkReply("GET_NYM", did, getNymResponse);
+        String nymData = LedgerResponse.data(getNymResponse);
+        String verkey = nymData == null ? null : LedgerResponse.field(nymData, "verkey");
+        if (verkey == null) {
+            throw new IllegalStateException("렛저에 DID가 없거나 verkey가 없음: " + did);
+        }
+
+        Map<String, JSONObject> values = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<String>> attribute : attributes.entrySet()) {
+            String getAttribResponse = attribute.getValue().join();
+            checkReply("GET_ATTRIB " + attribute.getKey(), did, getAttribResponse);
+            String raw = LedgerResponse.data(getAttribResponse);
+            if (raw != null) {
+                values.put(attribute.getKey(), new JSONObject(raw));
+            }
+        }
+        return new DidDocument(did, VerkeyResolver.expand(did, verkey), LedgerResponse.field(nymData, "role"), values);
+    }
+
+    // REQNACK/REJECT의 data는 비어 있으므로 확인하지 않으면 속성이 없는 document로 캐시된다.
+    private static void checkReply(String read, String did, String response) {
+        String op = LedgerResponse.op(response);
+        if (!"REPLY".equals(op)) {
+            throw new IllegalStateException(read + " 실패 (" + op + "), DID " + did + ": " + response);
+        }
+    }
+}
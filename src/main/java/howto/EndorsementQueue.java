@@ -0,0 +1,319 @@
+package howto;
+
+import org.hyperledger.indy.sdk.ledger.Ledger;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import utils.IndyMetrics;
+import utils.LatencyHistogram;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Endorser 쪽 보증 대기열. 작성자(author)가 appendRequestEndorser와 multiSignRequest까지 끝낸 요청을 submit하면
+ * 요청의 endorser DID별 작업 스레드가 최대 batchSize개씩 꺼내 multiSignRequest를 동시에 실행하고 렛저에 제출한다.
+ *
+ * - 보증인 지갑의 DID가 여러 개면 DID마다 큐와 작업 스레드가 있어 서로 기다리지 않는다. 작성자는 nextEndorserDid로 DID를 고르면 된다.
+ * - 요청마다 상태(QUEUED → SIGNING → SUBMITTING → WRITTEN/REJECTED/FAILED)를 Endorsement에 기록한다.
+ * - 대기열 길이와 submit부터 렛저 응답까지의 지연시간을 집계한다.
+ */
+public class EndorsementQueue {
+
+    public enum State {
+        QUEUED, SIGNING, SUBMITTING, WRITTEN, REJECTED, FAILED
+    }
+
+    public static class Endorsement {
+        private final long id;
+        private final String endorserDid;
+        private final String authorSignedRequest;
+        private final long submittedAt = System.nanoTime();
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private volatile State state = State.QUEUED;
+        private volatile String response;
+
+        Endorsement(long id, String endorserDid, String authorSignedRequest) {
+            this.id = id;
+            this.endorserDid = endorserDid;
+            this.authorSignedRequest = authorSignedRequest;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getEndorserDid() {
+            return endorserDid;
+        }
+
+        public String getAuthorSignedRequest() {
+            return authorSignedRequest;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /** 렛저 응답. 아직 제출되지 않았으면 null */
+        public String getResponse() {
+            return response;
+        }
+
+        /** REPLY 응답으로 완료된다. REQNACK/REJECT거나 서명, 제출이 실패하면 예외로 완료된다. */
+        public CompletableFuture<String> getResult() {
+            return result;
+        }
+    }
+
+    private final LedgerSubmitter ledger;
+    private final Wallet endorserWallet;
+    private final List<String> endorserDids;
+    private final int batchSize;
+    private final Semaphore capacity;
+    private final Semaphore submitWindow;
+    private final Map<String, LinkedBlockingQueue<Endorsement>> queues = new LinkedHashMap<>();
+    private final ConcurrentHashMap<Long, Endorsement> active = new ConcurrentHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger nextDid = new AtomicInteger();
+    private final Map<State, AtomicLong> finished = new EnumMap<>(State.class);
+    private final LatencyHistogram signLatency = new LatencyHistogram();
+    private final LatencyHistogram endToEndLatency = new LatencyHistogram();
+    // 큐에 넣기와 shutdown을 직렬화한다. shutdown 이후에는 어떤 요청도 큐에 들어가지 않는다.
+    private final Object enqueueLock = new Object();
+    private volatile boolean shutdown;
+
+    public EndorsementQueue(LedgerSubmitter ledger, Wallet endorserWallet, List<String> endorserDids) {
+        this(ledger, endorserWallet, endorserDids, 32, 10_000, 256);
+    }
+
+    /**
+     * @param endorserDids    이 큐가 보증할 endorser DID. 모두 endorserWallet에 있어야 한다.
+     * @param batchSize       DID별 작업 스레드가 한번에 서명하는 요청 수
+     * @param queueCapacity   모든 DID를 합쳐 대기할 수 있는 최대 요청 수. 가득 차면 submit이 대기한다.
+     * @param maxInFlightSubmits 응답을 기다리는 렛저 제출의 최대 수
+     */
+    public EndorsementQueue(LedgerSubmitter ledger, Wallet endorserWallet, List<String> endorserDids,
+                            int batchSize, int queueCapacity, int maxInFlightSubmits) {
+        if (endorserDids.isEmpty()) {
+            throw new IllegalArgumentException("endorser DID가 없음");
+        }
+        this.ledger = ledger;
+        this.endorserWallet = endorserWallet;
+        this.endorserDids = new ArrayList<>(endorserDids);
+        this.batchSize = batchSize;
+        this.capacity = new Semaphore(queueCapacity);
+        this.submitWindow = new Semaphore(maxInFlightSubmits);
+        for (State state : new State[]{State.WRITTEN, State.REJECTED, State.FAILED}) {
+            finished.put(state, new AtomicLong());
+        }
+        for (String endorserDid : this.endorserDids) {
+            LinkedBlockingQueue<Endorsement> queue = new LinkedBlockingQueue<>();
+            queues.put(endorserDid, queue);
+            Thread worker = new Thread(() -> work(endorserDid, queue), "endorser-" + endorserDid);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /** 작성자가 appendRequestEndorser에 넣을 endorser DID를 돌아가며 고른다. */
+    public String nextEndorserDid() {
+        return endorserDids.get(Math.floorMod(nextDid.getAndIncrement(), endorserDids.size()));
+    }
+
+    /**
+     * 작성자 쪽 준비 단계. request에 endorser DID를 넣고 작성자 DID로 multi-sign 한다.
+     * 결과를 submit에 넘기면 된다.
+     */
+    public static CompletableFuture<String> prepare(Wallet authorWallet, String authorDid, String requestJson, String endorserDid) {
+        return IndyMetrics.call("appendRequestEndorser", () -> Ledger.appendRequestEndorser(requestJson, endorserDid))
+                .thenCompose(IndyMetrics.compose("multiSignRequest", withEndorser -> Ledger.multiSignRequest(authorWallet, authorDid, withEndorser)));
+    }
+
+    /**
+     * 작성자 서명이 끝난 요청을 큐에 넣는다. 요청의 endorser 필드가 이 큐의 DID가 아니면 IllegalArgumentException.
+     * 큐가 가득 차 있으면 자리가 날 때까지 대기한다.
+     */
+    public Endorsement submit(String authorSignedRequest) throws InterruptedException {
+        String endorserDid = LedgerResponse.field(authorSignedRequest, "endorser");
+        LinkedBlockingQueue<Endorsement> queue = endorserDid == null ? null : queues.get(endorserDid);
+        if (queue == null) {
+            throw new IllegalArgumentException("이 큐가 보증하지 않는 endorser: " + endorserDid);
+        }
+        capacity.acquire();
+        Endorsement endorsement = new Endorsement(sequence.incrementAndGet(), endorserDid, authorSignedRequest);
+        synchronized (enqueueLock) {
+            if (!shutdown) {
+                active.put(endorsement.id, endorsement);
+                queue.add(endorsement);
+                return endorsement;
+            }
+        }
+        capacity.release();
+        fail(endorsement, new IllegalStateException("EndorsementQueue가 종료됨"));
+        return endorsement;
+    }
+
+    /** 아직 끝나지 않은 요청. 끝난 요청이나 모르는 id면 null */
+    public Endorsement get(long id) {
+        return active.get(id);
+    }
+
+    /** 서명을 기다리는 요청 수 */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (LinkedBlockingQueue<Endorsement> queue : queues.values()) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    /** endorser DID → 서명을 기다리는 요청 수 */
+    public Map<String, Integer> getQueueDepthByEndorser() {
+        Map<String, Integer> depths = new LinkedHashMap<>();
+        queues.forEach((did, queue) -> depths.put(did, queue.size()));
+        return depths;
+    }
+
+    /** 상태별 요청 수. 진행중인 상태는 현재 수, 끝난 상태는 누적 수 */
+    public Map<State, Long> getStateCounts() {
+        Map<State, Long> counts = new EnumMap<>(State.class);
+        for (State state : State.values()) {
+            counts.put(state, 0L);
+        }
+        for (Endorsement endorsement : active.values()) {
+            counts.merge(endorsement.state, 1L, Long::sum);
+        }
+        finished.forEach((state, count) -> counts.put(state, count.get()));
+        return counts;
+    }
+
+    public LatencyHistogram getSignLatency() {
+        return signLatency;
+    }
+
+    /** submit부터 렛저 응답까지 */
+    public LatencyHistogram getEndToEndLatency() {
+        return endToEndLatency;
+    }
+
+    /** 새 요청을 받지 않고, 큐에 남은 요청을 실패 처리한 뒤 작업 스레드를 멈춘다. 제출 중인 요청은 그대로 끝난다. */
+    public void shutdown() {
+        synchronized (enqueueLock) {
+            shutdown = true;
+        }
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        for (LinkedBlockingQueue<Endorsement> queue : queues.values()) {
+            List<Endorsement> dropped = new ArrayList<>();
+            queue.drainTo(dropped);
+            for (Endorsement endorsement : dropped) {
+                capacity.release();
+                fail(endorsement, new IllegalStateException("EndorsementQueue가 종료됨"));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("EndorsementQueue{depth=%d, states=%s, p50=%dus, p99=%dus}",
+                getQueueDepth(), getStateCounts(), endToEndLatency.getPercentileMicros(50), endToEndLatency.getPercentileMicros(99));
+    }
+
+    private void work(String endorserDid, LinkedBlockingQueue<Endorsement> queue) {
+        List<Endorsement> batch = new ArrayList<>(batchSize);
+        List<CompletableFuture<?>> signing = new ArrayList<>(batchSize);
+        while (!shutdown) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            capacity.release(batch.size());
+
+            long start = System.nanoTime();
+            for (Endorsement endorsement : batch) {
+                endorsement.state = State.SIGNING;
+                signing.add(IndyMetrics.call("multiSignRequest", () ->
+                                Ledger.multiSignRequest(endorserWallet, endorserDid, endorsement.authorSignedRequest))
+                        .handle((signed, error) -> {
+                            if (error != null) {
+                                fail(endorsement, error);
+                            } else {
+                                signLatency.recordSince(start);
+                                endorsement.state = State.SUBMITTING;
+                            }
+                            return signed;
+                        }));
+            }
+            // 작업 스레드에서 실행되므로 배치 서명을 동기로 기다려도 된다. 제출은 기다리지 않고 다음 배치로 넘어간다.
+            CompletableFuture.allOf(signing.toArray(new CompletableFuture<?>[0])).join();
+
+            for (int i = 0; i < batch.size(); i++) {
+                Endorsement endorsement = batch.get(i);
+                if (endorsement.state != State.SUBMITTING) {
+                    continue;
+                }
+                try {
+                    submitWindow.acquire();
+                } catch (InterruptedException e) {
+                    for (Endorsement unsent : batch.subList(i, batch.size())) {
+                        if (unsent.state == State.SUBMITTING) {
+                            fail(unsent, e);
+                        }
+                    }
+                    return;
+                }
+                String signed = (String) signing.get(i).join();
+                ledger.submitRequest(signed).whenComplete((response, error) -> {
+                    submitWindow.release();
+                    complete(endorsement, response, error);
+                });
+            }
+            batch.clear();
+            signing.clear();
+        }
+    }
+
+    private void complete(Endorsement endorsement, String response, Throwable error) {
+        if (error != null) {
+            fail(endorsement, error);
+            return;
+        }
+        endorsement.response = response;
+        String op = LedgerResponse.op(response);
+        if ("REPLY".equals(op)) {
+            finish(endorsement, State.WRITTEN);
+            endorsement.result.complete(response);
+        } else {
+            finish(endorsement, State.REJECTED);
+            endorsement.result.completeExceptionally(new IllegalStateException("보증 요청이 거절됨(" + op + "): "
+                    + LedgerResponse.field(response, "reason")));
+        }
+    }
+
+    private void fail(Endorsement endorsement, Throwable error) {
+        finish(endorsement, State.FAILED);
+        endorsement.result.completeExceptionally(error);
+    }
+
+    private void finish(Endorsement endorsement, State state) {
+        endorsement.state = state;
+        active.remove(endorsement.id);
+        finished.get(state).incrementAndGet();
+        endToEndLatency.recordSince(endorsement.submittedAt);
+    }
+}
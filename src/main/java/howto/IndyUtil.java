@@ -5,114 +5,182 @@ import org.hyperledger.indy.sdk.ledger.LedgerResults;
 import org.hyperledger.indy.sdk.pool.Pool;
 import org.hyperledger.indy.sdk.wallet.Wallet;
 import org.json.JSONObject;
+import utils.IndyFutures;
+import utils.IndyMetrics;
+import utils.LedgerCache;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
 import utils.PoolUtils;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 import static org.hyperledger.indy.sdk.ledger.Ledger.*;
 
 public class IndyUtil {
 
+    // Schema, CredDef, RevocRegDef는 한번 렛저에 기록되면 바뀌지 않으므로 TTL 없이 크기(JSON 문자 수) 기준으로만 제한한다.
+    private static final long LEDGER_OBJECT_CACHE_MAX_WEIGHT = 8 * 1024 * 1024;
+    // 렛저 노드와 이 프로세스의 시계 차이. 이보다 과거인 timestamp에는 새 entry가 기록되지 않는다고 본다.
+    private static final long REVOC_REG_CLOCK_SKEW_SECONDS = 60;
+    private static final LedgerCache<LedgerResults.ParseResponseResult> ledgerObjectCache =
+            new LedgerCache<>(LEDGER_OBJECT_CACHE_MAX_WEIGHT, (id, result) -> id.length() + result.getObjectJson().length());
+
+    // 특정 시점의 revocation registry 상태도 이후에 바뀌지 않으므로 (id, timestamp)로 캐시한다.
+    private static final LedgerCache<LedgerResults.ParseRegistryResponseResult> revocRegCache =
+            new LedgerCache<>(LEDGER_OBJECT_CACHE_MAX_WEIGHT, (key, result) -> key.length() + result.getObjectJson().length());
+
+    public static LedgerCache<LedgerResults.ParseResponseResult> getLedgerObjectCache() {
+        return ledgerObjectCache;
+    }
+
+    public static LedgerCache<LedgerResults.ParseRegistryResponseResult> getRevocRegCache() {
+        return revocRegCache;
+    }
+
     public static void sendNym(Pool pool, Wallet fromWallet, String did,
                         String newDid , String newKey, String role) throws IndyException, ExecutionException, InterruptedException {
-        String nymRequest = buildNymRequest(did, newDid, newKey, null, role).get();
+        String nymRequest = IndyMetrics.call("buildNymRequest", () -> buildNymRequest(did, newDid, newKey, null, role)).get();
         System.out.println("NYM request JSON:\n" + nymRequest);
-        String nymResponseJson = signAndSubmitRequest(pool, fromWallet, did, nymRequest).get();
+        String nymResponseJson = IndyMetrics.call("signAndSubmitRequest " + IndyMetrics.txnName(nymRequest), () -> signAndSubmitRequest(pool, fromWallet, did, nymRequest)).get();
         System.out.println("NYM transaction response:\n" + nymResponseJson);
     }
 
+    /**
+     * sendNym과 같지만 build, sign, submit을 블로킹 없이 이어서 실행하고 NYM 트랜잭션 응답을 반환한다.
+     */
+    public static CompletableFuture<String> sendNymAsync(LedgerSubmitter ledger, Wallet fromWallet, String did,
+                                                         String newDid, String newKey, String role) {
+        return IndyMetrics.call("buildNymRequest", () -> buildNymRequest(did, newDid, newKey, null, role))
+                .thenCompose(IndyMetrics.compose("signRequest", nymRequest -> signRequest(fromWallet, did, nymRequest)))
+                .thenCompose(ledger::submitRequest);
+    }
+
     public static void sendSchema(Pool pool, Wallet wallet, String submitterDid, String schemaJson) throws IndyException, ExecutionException, InterruptedException {
-        String schemaRequest = buildSchemaRequest(submitterDid, schemaJson).get();
-        signAndSubmitRequest(pool, wallet, submitterDid, schemaRequest).get();
+        String schemaRequest = IndyMetrics.call("buildSchemaRequest", () -> buildSchemaRequest(submitterDid, schemaJson)).get();
+        IndyMetrics.call("signAndSubmitRequest " + IndyMetrics.txnName(schemaRequest), () -> signAndSubmitRequest(pool, wallet, submitterDid, schemaRequest)).get();
     }
 
     public static void sendCredDef(Pool pool, Wallet wallet, String submitterDid, String credDerf) throws IndyException, ExecutionException, InterruptedException {
-        String credDefRequest = buildCredDefRequest(submitterDid, credDerf).get();
-        signAndSubmitRequest(pool, wallet, submitterDid, credDefRequest);
+        String credDefRequest = IndyMetrics.call("buildCredDefRequest", () -> buildCredDefRequest(submitterDid, credDerf)).get();
+        IndyMetrics.call("signAndSubmitRequest " + IndyMetrics.txnName(credDefRequest), () -> signAndSubmitRequest(pool, wallet, submitterDid, credDefRequest)).get();
     }
 
     public static void sendRevocRegDef(Pool pool, Wallet wallet, String submitterDid, String revocRegDefJson) throws IndyException, ExecutionException, InterruptedException {
-        String revocRegDefRequest = buildRevocRegDefRequest(submitterDid, revocRegDefJson).get();
-        signAndSubmitRequest(pool, wallet, submitterDid, revocRegDefRequest).get();
+        String revocRegDefRequest = IndyMetrics.call("buildRevocRegDefRequest", () -> buildRevocRegDefRequest(submitterDid, revocRegDefJson)).get();
+        String response = IndyMetrics.call("signAndSubmitRequest " + IndyMetrics.txnName(revocRegDefRequest), () -> signAndSubmitRequest(pool, wallet, submitterDid, revocRegDefRequest)).get();
+        checkReply(revocRegDefRequest, response);
     }
 
     public static void sendRevocRegEntry(Pool pool, Wallet wallet, String submitterDid, String revocRegId, String revocRegEntryJson) throws IndyException, ExecutionException, InterruptedException {
-        String revocRegEntryRequest = buildRevocRegEntryRequest(submitterDid, revocRegId, "CL_ACCUM", revocRegEntryJson).get();
-        signAndSubmitRequest(pool, wallet, submitterDid, revocRegEntryRequest);
+        String revocRegEntryRequest = IndyMetrics.call("buildRevocRegEntryRequest", () -> buildRevocRegEntryRequest(submitterDid, revocRegId, "CL_ACCUM", revocRegEntryJson)).get();
+        String response = IndyMetrics.call("signAndSubmitRequest " + IndyMetrics.txnName(revocRegEntryRequest), () -> signAndSubmitRequest(pool, wallet, submitterDid, revocRegEntryRequest)).get();
+        checkReply(revocRegEntryRequest, response);
+    }
+
+    /**
+     * sendRevocRegEntry와 같지만 블로킹 없이 build, sign, submit을 이어서 실행하고 트랜잭션 응답을 반환한다.
+     */
+    public static CompletableFuture<String> sendRevocRegEntryAsync(LedgerSubmitter ledger, Wallet wallet, String submitterDid,
+                                                                   String revocRegId, String revocRegEntryJson) {
+        return IndyMetrics.call("buildRevocRegEntryRequest", () -> buildRevocRegEntryRequest(submitterDid, revocRegId, "CL_ACCUM", revocRegEntryJson))
+                .thenCompose(IndyMetrics.compose("signRequest", revocRegEntryRequest -> signRequest(wallet, submitterDid, revocRegEntryRequest)))
+                .thenCompose(ledger::submitRequest);
     }
 
     static String getNym(Pool pool, String clientDid, String endorserDid) throws IndyException, ExecutionException, InterruptedException {
         System.out.println("\"Client\" -> Building the GET_NYM request to query Trust Anchor's Verkey as the Client");
-        String getNymRequest = buildGetNymRequest(clientDid, endorserDid).get();
+        String getNymRequest = IndyMetrics.call("buildGetNymRequest", () -> buildGetNymRequest(clientDid, endorserDid)).get();
         System.out.println("GET_NYM request json:\n" + getNymRequest);
 
         System.out.println("\"Client\" -> Sending the GET_NYM request to the ledger");
-        String getNymResponse = PoolUtils.ensurePreviousRequestApplied(pool, getNymRequest, innerResponse -> {
-            JSONObject innerResponseObject = new JSONObject(innerResponse);
-            return !innerResponseObject.getJSONObject("result").isNull("seqNo");
-        });
+        String getNymResponse = PoolUtils.ensurePreviousRequestApplied(pool, getNymRequest, IndyUtil::hasSeqNo);
 
         System.out.println("GET_NYM response json:\n" + getNymResponse);
 
-        String nymFromLedger = parseGetNymResponse(getNymResponse).get();
+        String nymFromLedger = IndyMetrics.call("parseGetNymResponse", () -> parseGetNymResponse(getNymResponse)).get();
         return nymFromLedger;
     }
 
     public static LedgerResults.ParseResponseResult getSchema(Pool pool, String submitterDid, String schemaId) throws IndyException, ExecutionException, InterruptedException {
-        String getSchemaRequest = buildGetSchemaRequest(submitterDid, schemaId).get();
-        String getSchemaResponse = PoolUtils.ensurePreviousRequestApplied(pool, getSchemaRequest, innerResponse -> {
-            JSONObject innerResponseObject = new JSONObject(innerResponse);
-            return !innerResponseObject.getJSONObject("result").isNull("seqNo");
-        });
-        LedgerResults.ParseResponseResult schemaInfoFromLedger = parseGetSchemaResponse(getSchemaResponse).get();
-        return schemaInfoFromLedger;
+        return IndyFutures.get(getSchemaAsync(LedgerSubmitter.of(pool), submitterDid, schemaId));
+    }
+
+    public static CompletableFuture<LedgerResults.ParseResponseResult> getSchemaAsync(LedgerSubmitter ledger, String submitterDid, String schemaId) {
+        return ledgerObjectCache.get(schemaId, id -> IndyMetrics.call("buildGetSchemaRequest", () -> buildGetSchemaRequest(submitterDid, id))
+                .thenCompose(getSchemaRequest -> PoolUtils.ensurePreviousRequestAppliedAsync(ledger, getSchemaRequest, IndyUtil::hasSeqNo))
+                .thenCompose(IndyMetrics.compose("parseGetSchemaResponse", getSchemaResponse -> parseGetSchemaResponse(getSchemaResponse))));
     }
 
     public static LedgerResults.ParseResponseResult getCredDef(Pool pool, String submitterDid, String credDefId) throws IndyException, ExecutionException, InterruptedException {
-        String getCredDefRequest = buildGetCredDefRequest(submitterDid, credDefId).get(); //(발행자DID, credDef Id)
-        String getCredDefResponse = PoolUtils.ensurePreviousRequestApplied(pool, getCredDefRequest, innerResponse -> {
-            JSONObject innerResponseObject = new JSONObject(innerResponse);
-            return !innerResponseObject.getJSONObject("result").isNull("seqNo");
-        });
-        LedgerResults.ParseResponseResult credDefFromLedger = parseGetCredDefResponse(getCredDefResponse).get();
-        return credDefFromLedger;
+        return IndyFutures.get(getCredDefAsync(LedgerSubmitter.of(pool), submitterDid, credDefId));
+    }
+
+    public static CompletableFuture<LedgerResults.ParseResponseResult> getCredDefAsync(LedgerSubmitter ledger, String submitterDid, String credDefId) {
+        return ledgerObjectCache.get(credDefId, id -> IndyMetrics.call("buildGetCredDefRequest", () -> buildGetCredDefRequest(submitterDid, id)) //(발행자DID, credDef Id)
+                .thenCompose(getCredDefRequest -> PoolUtils.ensurePreviousRequestAppliedAsync(ledger, getCredDefRequest, IndyUtil::hasSeqNo))
+                .thenCompose(IndyMetrics.compose("parseGetCredDefResponse", getCredDefResponse -> parseGetCredDefResponse(getCredDefResponse))));
     }
 
     public static LedgerResults.ParseRegistryResponseResult getRevocReg(Pool pool, String submitterDid, String revocRegDefId, long timestamp) throws IndyException, ExecutionException, InterruptedException {
-        String getRevocRegRequest = buildGetRevocRegRequest(submitterDid, revocRegDefId, timestamp).get();
-        String getRevocRegDefResponse = PoolUtils.ensurePreviousRequestApplied(pool, getRevocRegRequest, innerResponse -> {
-            JSONObject innerResponseObject = new JSONObject(innerResponse);
-            return !innerResponseObject.getJSONObject("result").isNull("seqNo");
-        });
+        return IndyFutures.get(getRevocRegAsync(LedgerSubmitter.of(pool), submitterDid, revocRegDefId, timestamp));
+    }
 
-        LedgerResults.ParseRegistryResponseResult revocRegFromLedger = parseGetRevocRegResponse(getRevocRegDefResponse).get();
-        return revocRegFromLedger;
+    /**
+     * timestamp(초) 시점의 registry. GET_REVOC_REG는 txnTime이 timestamp 이하인 마지막 entry를 돌려준다.
+     * entry 시각이 timestamp와 같거나(proof identifier의 timestamp로 조회한 경우) timestamp가 충분히 과거이면 결과가 바뀌지 않으므로 캐시한다.
+     * timestamp가 현재나 미래면 그 사이에 entry가 더 기록될 수 있으므로 캐시하지 않고 다음 조회 때 다시 읽는다.
+     */
+    public static CompletableFuture<LedgerResults.ParseRegistryResponseResult> getRevocRegAsync(LedgerSubmitter ledger, String submitterDid, String revocRegDefId, long timestamp) {
+        return revocRegCache.get(revocRegDefId + "@" + timestamp, key -> IndyMetrics.call("buildGetRevocRegRequest", () -> buildGetRevocRegRequest(submitterDid, revocRegDefId, timestamp))
+                .thenCompose(getRevocRegRequest -> PoolUtils.ensurePreviousRequestAppliedAsync(ledger, getRevocRegRequest, IndyUtil::hasSeqNo))
+                .thenCompose(IndyMetrics.compose("parseGetRevocRegResponse", getRevocRegResponse -> parseGetRevocRegResponse(getRevocRegResponse)))
+                .thenApply(revocReg -> {
+                    // 로드 future가 완료되기 전에 지우므로 캐시에 들어가지 않는다. 이미 기다리던 호출은 이 결과를 그대로 받는다.
+                    long settled = System.currentTimeMillis() / 1000 - REVOC_REG_CLOCK_SKEW_SECONDS;
+                    if (revocReg.getTimestamp() != timestamp && timestamp >= settled) {
+                        revocRegCache.invalidate(key);
+                    }
+                    return revocReg;
+                }));
     }
 
     public static LedgerResults.ParseResponseResult getRevocRegDef(Pool pool, String submitterDid, String revRegDefId) throws IndyException, ExecutionException, InterruptedException {
-        String getRevocRegDefRequest = buildGetRevocRegDefRequest(submitterDid, revRegDefId).get();
-        String getRevocRegDefResponse = PoolUtils.ensurePreviousRequestApplied(pool, getRevocRegDefRequest, innerResponse -> {
-            JSONObject innerResponseObject = new JSONObject(innerResponse);
-            return !innerResponseObject.getJSONObject("result").isNull("seqNo");
-        });
-
-        LedgerResults.ParseResponseResult revocRegDefFromLedger = parseGetRevocRegDefResponse(getRevocRegDefResponse).get();
-        return revocRegDefFromLedger;
+        return IndyFutures.get(getRevocRegDefAsync(LedgerSubmitter.of(pool), submitterDid, revRegDefId));
+    }
 
+    public static CompletableFuture<LedgerResults.ParseResponseResult> getRevocRegDefAsync(LedgerSubmitter ledger, String submitterDid, String revRegDefId) {
+        return ledgerObjectCache.get(revRegDefId, id -> IndyMetrics.call("buildGetRevocRegDefRequest", () -> buildGetRevocRegDefRequest(submitterDid, id))
+                .thenCompose(getRevocRegDefRequest -> PoolUtils.ensurePreviousRequestAppliedAsync(ledger, getRevocRegDefRequest, IndyUtil::hasSeqNo))
+                .thenCompose(IndyMetrics.compose("parseGetRevocRegDefResponse", getRevocRegDefResponse -> parseGetRevocRegDefResponse(getRevocRegDefResponse))));
     }
 
     public static LedgerResults.ParseRegistryResponseResult getRevocRegDelta(Pool pool, String submitterDid, String revocRegDefId, long from, long to) throws IndyException, ExecutionException, InterruptedException {
-        String getRevocRegDeltaRequest = buildGetRevocRegDeltaRequest(submitterDid, revocRegDefId, from, to).get();
-        String getRevocRegDeltaResponse = PoolUtils.ensurePreviousRequestApplied(pool, getRevocRegDeltaRequest, innerResponse -> {
-            JSONObject innerResponseObject = new JSONObject(innerResponse);
-            return !innerResponseObject.getJSONObject("result").isNull("seqNo");
-        });
+        return IndyFutures.get(getRevocRegDeltaAsync(LedgerSubmitter.of(pool), submitterDid, revocRegDefId, from, to));
+    }
 
-        LedgerResults.ParseRegistryResponseResult revocRegDeltaFromLedger = parseGetRevocRegDeltaResponse(getRevocRegDeltaResponse).get();
-        return revocRegDeltaFromLedger;
+    /**
+     * from 시점부터 to 시점까지의 delta. from이 -1이면 registry 생성 시점부터의 전체 delta를 가져온다.
+     */
+    public static CompletableFuture<LedgerResults.ParseRegistryResponseResult> getRevocRegDeltaAsync(LedgerSubmitter ledger, String submitterDid, String revocRegDefId, long from, long to) {
+        return IndyMetrics.call("buildGetRevocRegDeltaRequest", () -> buildGetRevocRegDeltaRequest(submitterDid, revocRegDefId, from, to))
+                .thenCompose(getRevocRegDeltaRequest -> PoolUtils.ensurePreviousRequestAppliedAsync(ledger, getRevocRegDeltaRequest, IndyUtil::hasSeqNo))
+                .thenCompose(IndyMetrics.compose("parseGetRevocRegDeltaResponse", getRevocRegDeltaResponse -> parseGetRevocRegDeltaResponse(getRevocRegDeltaResponse)));
     }
 
 
+    // REQNACK, REJECT 응답도 submit future는 정상 완료되므로 op를 직접 확인한다.
+    private static void checkReply(String request, String response) {
+        String op = LedgerResponse.op(response);
+        if (!"REPLY".equals(op)) {
+            throw new IllegalStateException(IndyMetrics.txnName(request) + " 트랜잭션 실패 (" + op + "): " + response);
+        }
+    }
+
+    private static boolean hasSeqNo(String response) {
+        return LedgerResponse.hasSeqNo(response);
+    }
+
     public static Wallet createAndOpenWallet(String identity) throws Exception {
         System.out.println("["+identity+"]-> Create And Open wallet" + "["+identity+"]");
         String walletConfig = new JSONObject().put("id", identity+"Wallet").toString();
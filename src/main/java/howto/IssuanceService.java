@@ -0,0 +1,270 @@
+package howto;
+
+import org.hyperledger.indy.sdk.anoncreds.Anoncreds;
+import org.hyperledger.indy.sdk.anoncreds.AnoncredsResults;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import utils.IndyFutures;
+import utils.LatencyHistogram;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 발행자의 VC 대량 발행 엔진. issuerCreateCredential 요청을 크기가 제한된 큐에 받아 CPU 수만큼의 작업 스레드에서 처리한다.
+ *
+ * - 큐가 가득 차면 submit이 자리가 날 때까지 대기한다(backpressure).
+ * - credential definition별로 큐를 나누고 돌아가며 하나씩 꺼내므로, 한 cred def에 요청이 몰려도 다른 cred def가 밀리지 않는다.
+ * - revocation을 지원하는 cred def는 registerRevocation으로 RevocationRegistryManager를 등록해 두면 registry를 자동으로 배정한다.
+ * - 대기(queue), registry 배정(registry), 발행(issue), 전체(total) 단계별 지연시간을 LatencyHistogram으로 기록한다.
+ *
+ * 지갑과 cred def는 기존 흐름과 같은 issuer Wallet 핸들과 cred def id를 그대로 사용한다.
+ */
+public class IssuanceService {
+
+    public static class IssuanceRequest {
+        private final String credDefId;
+        private final String credOfferJson;
+        private final String credReqJson;
+        private final String credValuesJson;
+
+        public IssuanceRequest(String credDefId, String credOfferJson, String credReqJson, String credValuesJson) {
+            this.credDefId = credDefId;
+            this.credOfferJson = credOfferJson;
+            this.credReqJson = credReqJson;
+            this.credValuesJson = credValuesJson;
+        }
+
+        public String getCredDefId() {
+            return credDefId;
+        }
+    }
+
+    public static class IssuanceResult {
+        private final IssuanceRequest request;
+        private final String credentialJson;
+        private final String revRegId;
+        private final String credRevId;
+        private final String revRegDeltaJson;
+
+        IssuanceResult(IssuanceRequest request, String revRegId, AnoncredsResults.IssuerCreateCredentialResult result) {
+            this.request = request;
+            this.credentialJson = result.getCredentialJson();
+            this.revRegId = revRegId;
+            this.credRevId = result.getRevocId();
+            this.revRegDeltaJson = result.getRevocRegDeltaJson();
+        }
+
+        public IssuanceRequest getRequest() {
+            return request;
+        }
+
+        public String getCredentialJson() {
+            return credentialJson;
+        }
+
+        /** revocation을 지원하지 않는 cred def면 null */
+        public String getRevRegId() {
+            return revRegId;
+        }
+
+        public String getCredRevId() {
+            return credRevId;
+        }
+
+        /** ISSUANCE_ON_DEMAND registry면 렛저에 올려야 하는 delta */
+        public String getRevRegDeltaJson() {
+            return revRegDeltaJson;
+        }
+    }
+
+    private static class Task {
+        final IssuanceRequest request;
+        final CompletableFuture<IssuanceResult> result = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+
+        Task(IssuanceRequest request) {
+            this.request = request;
+        }
+    }
+
+    private final Wallet issuerWallet;
+    private final Semaphore capacity;
+    private final Map<String, ArrayDeque<Task>> queues = new HashMap<>();
+    // 대기중인 요청이 있는 cred def id를 돌아가며 꺼낸다.
+    private final ArrayDeque<String> ready = new ArrayDeque<>();
+    private final Map<String, RevocationRegistryManager> revocation = new ConcurrentHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram registryLatency = new LatencyHistogram();
+    private final LatencyHistogram issueLatency = new LatencyHistogram();
+    private final LatencyHistogram totalLatency = new LatencyHistogram();
+    private boolean shutdown;
+
+    public IssuanceService(Wallet issuerWallet, int queueCapacity) {
+        this(issuerWallet, queueCapacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    public IssuanceService(Wallet issuerWallet, int queueCapacity, int workerCount) {
+        this.issuerWallet = issuerWallet;
+        this.capacity = new Semaphore(queueCapacity);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "issuance-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /** 이 cred def로 발행하는 VC에 manager가 관리하는 revocation registry를 배정한다. */
+    public void registerRevocation(String credDefId, RevocationRegistryManager manager) {
+        revocation.put(credDefId, manager);
+    }
+
+    /**
+     * 발행 요청을 큐에 넣는다. 큐가 가득 차 있으면 자리가 날 때까지 대기한다.
+     * 반환된 future는 발행 결과로 완료되며 발행이 실패하면 예외로 완료된다.
+     */
+    public CompletableFuture<IssuanceResult> submit(IssuanceRequest request) throws InterruptedException {
+        capacity.acquire();
+        return enqueue(request);
+    }
+
+    /** 큐가 가득 차 있으면 기다리지 않고 null을 반환한다. */
+    public CompletableFuture<IssuanceResult> trySubmit(IssuanceRequest request) {
+        if (!capacity.tryAcquire()) {
+            return null;
+        }
+        return enqueue(request);
+    }
+
+    public LatencyHistogram getQueueLatency() {
+        return queueLatency;
+    }
+
+    public LatencyHistogram getRegistryLatency() {
+        return registryLatency;
+    }
+
+    public LatencyHistogram getIssueLatency() {
+        return issueLatency;
+    }
+
+    public LatencyHistogram getTotalLatency() {
+        return totalLatency;
+    }
+
+    public synchronized int getQueuedCount() {
+        int queued = 0;
+        for (ArrayDeque<Task> queue : queues.values()) {
+            queued += queue.size();
+        }
+        return queued;
+    }
+
+    /** 새 요청을 받지 않고, 큐에 남은 요청을 실패 처리한 뒤 작업 스레드를 멈춘다. */
+    public void shutdown() {
+        List<Task> dropped = new ArrayList<>();
+        synchronized (this) {
+            shutdown = true;
+            for (ArrayDeque<Task> queue : queues.values()) {
+                dropped.addAll(queue);
+            }
+            queues.clear();
+            ready.clear();
+            notifyAll();
+        }
+        for (Task task : dropped) {
+            capacity.release();
+            task.result.completeExceptionally(new IllegalStateException("IssuanceService가 종료됨"));
+        }
+    }
+
+    private CompletableFuture<IssuanceResult> enqueue(IssuanceRequest request) {
+        Task task = new Task(request);
+        synchronized (this) {
+            if (shutdown) {
+                capacity.release();
+                task.result.completeExceptionally(new IllegalStateException("IssuanceService가 종료됨"));
+                return task.result;
+            }
+            ArrayDeque<Task> queue = queues.computeIfAbsent(request.credDefId, id -> new ArrayDeque<>());
+            if (queue.isEmpty()) {
+                ready.addLast(request.credDefId);
+            }
+            queue.addLast(task);
+            notify();
+        }
+        return task.result;
+    }
+
+    private synchronized Task take() throws InterruptedException {
+        while (ready.isEmpty()) {
+            if (shutdown) {
+                return null;
+            }
+            wait();
+        }
+        String credDefId = ready.pollFirst();
+        ArrayDeque<Task> queue = queues.get(credDefId);
+        Task task = queue.pollFirst();
+        if (queue.isEmpty()) {
+            queues.remove(credDefId);
+        } else {
+            ready.addLast(credDefId);
+        }
+        return task;
+    }
+
+    private void work() {
+        while (true) {
+            Task task;
+            try {
+                task = take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == null) {
+                return;
+            }
+            capacity.release();
+            try {
+                task.result.complete(issue(task));
+            } catch (Exception e) {
+                task.result.completeExceptionally(e);
+            }
+            totalLatency.recordSince(task.enqueuedAt);
+        }
+    }
+
+    // 작업 스레드에서 실행되므로 libindy 결과를 동기로 기다려도 된다.
+    private IssuanceResult issue(Task task) throws Exception {
+        IssuanceRequest request = task.request;
+        queueLatency.recordSince(task.enqueuedAt);
+
+        String revRegId = null;
+        int tailsReaderHandle = -1;
+        RevocationRegistryManager manager = revocation.get(request.credDefId);
+        if (manager != null) {
+            long start = System.nanoTime();
+            RevocationRegistryManager.RegistrySlot slot = manager.acquire();
+            registryLatency.recordSince(start);
+            revRegId = slot.getRevRegId();
+            tailsReaderHandle = slot.getTailsReaderHandle();
+        }
+
+        String slotRevRegId = revRegId;
+        int slotTailsReaderHandle = tailsReaderHandle;
+        long start = System.nanoTime();
+        AnoncredsResults.IssuerCreateCredentialResult created = IndyFutures.get(IndyFutures.call(() ->
+                Anoncreds.issuerCreateCredential(issuerWallet, request.credOfferJson, request.credReqJson, request.credValuesJson,
+                        slotRevRegId, slotTailsReaderHandle)));
+        issueLatency.recordSince(start);
+        return new IssuanceResult(request, revRegId, created);
+    }
+}
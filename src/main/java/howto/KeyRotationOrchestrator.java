@@ -0,0 +1,249 @@
+package howto;
+
+import org.hyperledger.indy.sdk.did.Did;
+import org.hyperledger.indy.sdk.ledger.Ledger;
+import org.hyperledger.indy.sdk.pool.Pool;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import utils.IndyFutures;
+import utils.IndyMetrics;
+import utils.LatencyHistogram;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
+import utils.PoolUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 지갑에 있는 여러 DID의 verkey를 동시에 교체한다. DID 하나의 교체 순서는 다음과 같다.
+ *
+ * 1) Did.replaceKeysStart로 새 키 생성. 지갑은 apply 전까지 계속 기존 키로 서명한다.
+ * 2) 새 verkey를 담은 NYM을 기존 키로 서명해서 제출
+ * 3) REPLY를 받은 후에만 Did.replaceKeysApply. REPLY는 풀 합의로 기록된 뒤에만 오므로 따로 GET_NYM으로 확인하지 않는다.
+ *
+ * 렛저가 늦게 반영해도 apply 전까지는 기존 키로 서명하므로 서명이 실패하는 구간이 없다.
+ * NYM은 기록됐는데 apply가 실패했거나, 제출 응답을 받지 못해 기록 여부를 모르는 DID는 resume으로 마저 적용한다.
+ * 동시에 진행하는 교체 수는 maxParallel로 제한한다. VerkeyResolver를 주면 교체가 끝난 DID의 verkey를 바로 갱신한다.
+ */
+public class KeyRotationOrchestrator {
+
+    public static class RotationResult {
+        private final String did;
+        private final String newVerkey;
+        private final boolean written;
+        private final Throwable error;
+        private final long latencyNanos;
+
+        RotationResult(String did, String newVerkey, boolean written, Throwable error, long latencyNanos) {
+            this.did = did;
+            this.newVerkey = newVerkey;
+            this.written = written;
+            this.error = error;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public String getDid() {
+            return did;
+        }
+
+        /** 생성한 새 verkey. replaceKeysStart부터 실패했으면 null */
+        public String getNewVerkey() {
+            return newVerkey;
+        }
+
+        public boolean isRotated() {
+            return error == null;
+        }
+
+        /** 렛저에 새 verkey가 기록된 것을 확인했는지 */
+        public boolean isWritten() {
+            return written;
+        }
+
+        /** 렛저는 새 키인데 지갑은 아직 기존 키로 서명하는 상태. resume(did, newVerkey)로 apply해야 한다. */
+        public boolean isPendingApply() {
+            return written && error != null;
+        }
+
+        /**
+         * 교체 실패 원인. isWritten이 false면 렛저에 새 키가 있는지 확인되지 않은 것이다.
+         * NYM이 거절됐으면 지갑과 렛저 모두 기존 키 그대로지만, 제출 응답을 받지 못한 경우는 기록됐을 수 있으므로 resume으로 확인한다.
+         * isWritten이 true면 apply만 실패한 것이다(isPendingApply).
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    private final LedgerSubmitter ledger;
+    private final Wallet wallet;
+    private final int maxParallel;
+    private final Semaphore window;
+    private final VerkeyResolver resolver;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong rotated = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public KeyRotationOrchestrator(Pool pool, Wallet wallet) {
+        this(LedgerSubmitter.of(pool), wallet, 64, null);
+    }
+
+    /**
+     * @param maxParallel 동시에 진행하는 교체 수
+     * @param resolver    교체가 끝나면 새 verkey를 넣을 resolver. 없으면 null
+     */
+    public KeyRotationOrchestrator(LedgerSubmitter ledger, Wallet wallet, int maxParallel, VerkeyResolver resolver) {
+        this.ledger = ledger;
+        this.wallet = wallet;
+        this.maxParallel = maxParallel;
+        this.window = new Semaphore(maxParallel);
+        this.resolver = resolver;
+    }
+
+    /**
+     * 모든 DID를 교체하고 입력 순서대로 결과를 반환한다. 하나가 실패해도 나머지는 계속 진행한다.
+     */
+    public List<RotationResult> rotateAll(Collection<String> dids) throws InterruptedException {
+        List<CompletableFuture<RotationResult>> pending = new ArrayList<>(dids.size());
+        for (String did : dids) {
+            pending.add(rotate(did));
+        }
+
+        List<RotationResult> results = new ArrayList<>(pending.size());
+        for (CompletableFuture<RotationResult> result : pending) {
+            results.add(result.join());
+        }
+        return results;
+    }
+
+    public RotationResult rotateSync(String did) throws InterruptedException, ExecutionException {
+        return IndyFutures.get(rotate(did));
+    }
+
+    /**
+     * DID 하나의 교체를 시작한다. 진행중인 교체가 maxParallel개이면 자리가 날 때까지 대기한다.
+     * 반환된 future는 실패시에도 예외 없이 RotationResult로 완료된다.
+     */
+    public CompletableFuture<RotationResult> rotate(String did) throws InterruptedException {
+        window.acquire();
+        long start = System.nanoTime();
+        Rotation rotation = new Rotation();
+        CompletableFuture<Void> done = IndyMetrics.call("replaceKeysStart", () -> Did.replaceKeysStart(wallet, did, "{}"))
+                .thenCompose(newVerkey -> {
+                    rotation.newVerkey = newVerkey;
+                    return publish(did, newVerkey);
+                })
+                .thenCompose(written -> {
+                    rotation.written = true;
+                    return apply(did);
+                });
+        return complete(did, rotation, start, done);
+    }
+
+    /**
+     * 이전 교체에서 apply하지 못한 DID(isPendingApply, 또는 제출 응답을 받지 못한 실패)를 마저 교체한다.
+     * GET_NYM으로 렛저의 verkey가 newVerkey인 것을 확인한 뒤에만 replaceKeysApply한다.
+     * 지갑에 replaceKeysStart로 만든 키가 남아 있어야 하므로, 그 사이에 같은 DID로 rotate를 다시 하지 않는다.
+     */
+    public CompletableFuture<RotationResult> resume(String did, String newVerkey) throws InterruptedException {
+        window.acquire();
+        long start = System.nanoTime();
+        Rotation rotation = new Rotation();
+        rotation.newVerkey = newVerkey;
+        CompletableFuture<Void> done = IndyMetrics.call("buildGetNymRequest", () -> Ledger.buildGetNymRequest(did, did))
+                .thenCompose(getNymRequest -> PoolUtils.ensurePreviousRequestAppliedAsync(ledger, getNymRequest,
+                        response -> hasVerkey(did, newVerkey, response)))
+                .thenCompose(confirmed -> {
+                    rotation.written = true;
+                    return apply(did);
+                });
+        return complete(did, rotation, start, done);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getRotatedCount() {
+        return rotated.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public int getInFlightCount() {
+        return maxParallel - window.availablePermits();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("KeyRotationOrchestrator{rotated=%d, failed=%d, p50=%dus, p99=%dus}",
+                getRotatedCount(), getFailedCount(), latency.getPercentileMicros(50), latency.getPercentileMicros(99));
+    }
+
+    private static class Rotation {
+        volatile String newVerkey;
+        volatile boolean written;
+    }
+
+    private CompletableFuture<RotationResult> complete(String did, Rotation rotation, long start, CompletableFuture<Void> done) {
+        CompletableFuture<RotationResult> result = new CompletableFuture<>();
+        done.whenComplete((ignored, error) -> {
+            long elapsed = System.nanoTime() - start;
+            latency.record(elapsed);
+            if (error != null) {
+                failed.incrementAndGet();
+                result.complete(new RotationResult(did, rotation.newVerkey, rotation.written, unwrap(error), elapsed));
+            } else {
+                rotated.incrementAndGet();
+                if (resolver != null) {
+                    resolver.put(did, rotation.newVerkey);
+                }
+                result.complete(new RotationResult(did, rotation.newVerkey, true, null, elapsed));
+            }
+        });
+        return result.whenComplete((rotationResult, error) -> window.release());
+    }
+
+    // 기존 키로 서명한 NYM을 제출한다. REPLY가 아니면 렛저는 기존 키 그대로이므로 실패로 끝낸다.
+    private CompletableFuture<String> publish(String did, String newVerkey) {
+        return IndyMetrics.call("buildNymRequest", () -> Ledger.buildNymRequest(did, did, newVerkey, null, null))
+                .thenCompose(IndyMetrics.compose("signRequest", nymRequest -> Ledger.signRequest(wallet, did, nymRequest)))
+                .thenCompose(ledger::submitRequest)
+                .thenApply(nymResponse -> {
+                    if (!"REPLY".equals(LedgerResponse.op(nymResponse))) {
+                        throw new IllegalStateException("NYM 업데이트가 거절됨: " + nymResponse);
+                    }
+                    return nymResponse;
+                });
+    }
+
+    private CompletableFuture<Void> apply(String did) {
+        return IndyMetrics.call("replaceKeysApply", () -> Did.replaceKeysApply(wallet, did));
+    }
+
+    private static boolean hasVerkey(String did, String verkey, String getNymResponse) {
+        String data = LedgerResponse.data(getNymResponse);
+        String ledgerVerkey = data == null ? null : LedgerResponse.field(data, "verkey");
+        return ledgerVerkey != null && verkey.equals(VerkeyResolver.expand(did, ledgerVerkey));
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,220 @@
+package howto;
+
+import org.hyperledger.indy.sdk.crypto.Crypto;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import utils.IndyFutures;
+import utils.LatencyHistogram;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * (수신자 verkey, payload) 메시지를 대량으로 authCrypt/anonCrypt 하는 파이프라인.
+ * senderVerkey를 주면 authCrypt, null이면 anonCrypt로 암호화한다.
+ *
+ * - 작업 스레드가 큐에서 최대 batchSize개를 한번에 꺼내 모든 암호화 호출을 libindy에 넘긴 뒤 한꺼번에 기다린다.
+ *   메시지마다 스레드를 오가지 않으므로 libindy 워커가 쉬지 않는다.
+ * - 큐는 queueCapacity로 제한되어 가득 차면 submit이 대기한다(backpressure).
+ * - submit부터 암호문이 나올 때까지의 메시지별 지연시간을 LatencyHistogram으로 기록한다.
+ */
+public class MessageCryptoPipeline {
+
+    public static class Message {
+        private final String recipientVerkey;
+        private final CharSequence payload;
+
+        public Message(String recipientVerkey, CharSequence payload) {
+            this.recipientVerkey = recipientVerkey;
+            this.payload = payload;
+        }
+
+        public String getRecipientVerkey() {
+            return recipientVerkey;
+        }
+
+        public CharSequence getPayload() {
+            return payload;
+        }
+    }
+
+    public static class EncryptedMessage {
+        private final Message message;
+        private final byte[] encrypted;
+        private final long latencyNanos;
+
+        EncryptedMessage(Message message, byte[] encrypted, long latencyNanos) {
+            this.message = message;
+            this.encrypted = encrypted;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public Message getMessage() {
+            return message;
+        }
+
+        public byte[] getEncrypted() {
+            return encrypted;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    private static class Task {
+        final Message message;
+        final CompletableFuture<EncryptedMessage> result = new CompletableFuture<>();
+        final long enqueuedAt = System.nanoTime();
+
+        Task(Message message) {
+            this.message = message;
+        }
+    }
+
+    private final Wallet wallet;
+    private final String senderVerkey;
+    private final int batchSize;
+    private final BlockingQueue<Task> queue;
+    private final List<Thread> workers = new ArrayList<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile boolean shutdown;
+
+    public MessageCryptoPipeline(Wallet wallet, String senderVerkey) {
+        this(wallet, senderVerkey, Runtime.getRuntime().availableProcessors(), 64, 16 * 1024);
+    }
+
+    /**
+     * @param senderVerkey   authCrypt 발신자 verkey. null이면 anonCrypt
+     * @param batchSize      작업 스레드가 한번에 libindy에 넘기는 메시지 수
+     * @param queueCapacity  대기할 수 있는 최대 메시지 수
+     */
+    public MessageCryptoPipeline(Wallet wallet, String senderVerkey, int workerCount, int batchSize, int queueCapacity) {
+        this.wallet = wallet;
+        this.senderVerkey = senderVerkey;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "message-crypto-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * 메시지를 큐에 넣는다. 큐가 가득 차 있으면 자리가 날 때까지 대기한다.
+     * 반환된 future는 암호문으로 완료되며 암호화가 실패하면 예외로 완료된다.
+     */
+    public CompletableFuture<EncryptedMessage> submit(String recipientVerkey, CharSequence payload) throws InterruptedException {
+        return submit(new Message(recipientVerkey, payload));
+    }
+
+    public CompletableFuture<EncryptedMessage> submit(Message message) throws InterruptedException {
+        Task task = new Task(message);
+        if (shutdown) {
+            task.result.completeExceptionally(new IllegalStateException("MessageCryptoPipeline이 종료됨"));
+            return task.result;
+        }
+        queue.put(task);
+        // put 도중에 shutdown이 끝났으면 아무도 꺼내지 않으므로 직접 실패 처리한다. 이미 꺼내졌으면 꺼낸 쪽이 완료한다.
+        if (shutdown && queue.remove(task)) {
+            task.result.completeExceptionally(new IllegalStateException("MessageCryptoPipeline이 종료됨"));
+        }
+        return task.result;
+    }
+
+    /**
+     * 모든 메시지를 암호화하고 입력 순서대로 결과를 반환한다. 하나라도 실패하면 그 예외가 던져진다.
+     */
+    public List<EncryptedMessage> encryptAll(Stream<Message> messages) throws InterruptedException {
+        List<CompletableFuture<EncryptedMessage>> pending = new ArrayList<>();
+        Iterator<Message> iterator = messages.iterator();
+        while (iterator.hasNext()) {
+            pending.add(submit(iterator.next()));
+        }
+
+        List<EncryptedMessage> results = new ArrayList<>(pending.size());
+        for (CompletableFuture<EncryptedMessage> result : pending) {
+            results.add(result.join());
+        }
+        return results;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    public int getQueuedCount() {
+        return queue.size();
+    }
+
+    /** 새 메시지를 받지 않고, 큐에 남은 메시지를 실패 처리한 뒤 작업 스레드를 멈춘다. */
+    public void shutdown() {
+        shutdown = true;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+        List<Task> dropped = new ArrayList<>();
+        queue.drainTo(dropped);
+        for (Task task : dropped) {
+            task.result.completeExceptionally(new IllegalStateException("MessageCryptoPipeline이 종료됨"));
+        }
+    }
+
+    private void work() {
+        List<Task> batch = new ArrayList<>(batchSize);
+        List<CompletableFuture<?>> inFlight = new ArrayList<>(batchSize);
+        while (!shutdown) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+
+            for (Task task : batch) {
+                inFlight.add(encrypt(task));
+            }
+            // 작업 스레드에서 실행되므로 배치 전체를 동기로 기다려도 된다.
+            CompletableFuture.allOf(inFlight.toArray(new CompletableFuture<?>[0])).handle((ignored, error) -> null).join();
+            batch.clear();
+            inFlight.clear();
+        }
+    }
+
+    private CompletableFuture<EncryptedMessage> encrypt(Task task) {
+        Message message = task.message;
+        CompletableFuture<byte[]> encrypted;
+        try {
+            byte[] payload = message.payload.toString().getBytes(StandardCharsets.UTF_8);
+            encrypted = senderVerkey != null
+                    ? IndyFutures.call(() -> Crypto.authCrypt(wallet, senderVerkey, message.recipientVerkey, payload))
+                    : IndyFutures.call(() -> Crypto.anonCrypt(message.recipientVerkey, payload));
+        } catch (RuntimeException e) {
+            encrypted = IndyFutures.failed(e);
+        }
+        encrypted.whenComplete((bytes, error) -> {
+            long elapsed = System.nanoTime() - task.enqueuedAt;
+            latency.record(elapsed);
+            if (error != null) {
+                failures.incrementAndGet();
+                task.result.completeExceptionally(error);
+            } else {
+                task.result.complete(new EncryptedMessage(message, bytes, elapsed));
+            }
+        });
+        return task.result;
+    }
+}
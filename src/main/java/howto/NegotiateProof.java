@@ -2,7 +2,6 @@ package howto;
 
 import org.hyperledger.indy.sdk.anoncreds.Anoncreds;
 import org.hyperledger.indy.sdk.anoncreds.AnoncredsResults;
-import org.hyperledger.indy.sdk.anoncreds.CredentialsSearchForProofReq;
 import org.hyperledger.indy.sdk.did.Did;
 import org.hyperledger.indy.sdk.did.DidResults;
 import org.hyperledger.indy.sdk.ledger.LedgerResults;
@@ -12,6 +11,9 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 import utils.PoolUtils;
 
+import java.util.Collections;
+import java.util.Map;
+
 import static org.hyperledger.indy.sdk.anoncreds.Anoncreds.*;
 import static org.hyperledger.indy.sdk.anoncreds.Anoncreds.proverStoreCredential;
 import static org.hyperledger.indy.sdk.ledger.Ledger.*;
@@ -258,42 +260,20 @@ public class NegotiateProof {
 
         //2.[사용자(holder,prover)] -> 증명요청(ProofRequest) 수신한 사용자는 보유한 VC 중 주어진 ProofRequest에 해당되는 VC 검색 해 requestedCredentialsJson 만듬.
         System.out.println("\n25.\"Prover\" -> Prover gets Credentials for Proof Request \n");
-        CredentialsSearchForProofReq credentialsSearch = CredentialsSearchForProofReq.open(proverWallet, proofRequestJson, null).get();
-        JSONArray credentialsForAttribute1 = new JSONArray(credentialsSearch.fetchNextCredentials("attr1_referent", 100).get());
-        String credentialIdForAttribute1 = credentialsForAttribute1.getJSONObject(0).getJSONObject("cred_info").getString("referent");
-        System.out.println("credentialsForAttribute1.getJSONObject(0).toString() : " + credentialsForAttribute1.getJSONObject(0).toString());
-
-        JSONArray credentialsForAttribute2 = new JSONArray(credentialsSearch.fetchNextCredentials("attr2_referent", 100).get());
-        String credentialIdForAttribute2 = credentialsForAttribute2.getJSONObject(0).getJSONObject("cred_info").getString("referent");
-        System.out.println("credentialsForAttribute2.getJSONObject(0).toString() : " + credentialsForAttribute2.getJSONObject(0).toString());
-
-        JSONArray credentialsForAttribute3 = new JSONArray(credentialsSearch.fetchNextCredentials("attr3_referent", 100).get());
-        assertEquals(0, credentialsForAttribute3.length());
-
-        JSONArray credentialsForPredicate = new JSONArray(credentialsSearch.fetchNextCredentials("predicate1_referent", 100).get());
-        String credentialIdForPredicate = credentialsForPredicate.getJSONObject(0).getJSONObject("cred_info").getString("referent");
-        credentialsSearch.close();
+        // 선택 결과는 proof request 모양별로 캐시되므로 같은 모양의 다음 요청은 지갑을 다시 검색하지 않는다.
+        RequestedCredentialsBuilder requestedCredentialsBuilder =
+                new RequestedCredentialsBuilder(proverWallet, CredentialSelector.Policy.first());
+        Map<String, JSONObject> selectedCredentials = requestedCredentialsBuilder.select(proofRequestJson);
+        System.out.println("selectedCredentials.get(\"attr1_referent\") : " + selectedCredentials.get("attr1_referent"));
+        System.out.println("selectedCredentials.get(\"attr2_referent\") : " + selectedCredentials.get("attr2_referent"));
+        assertFalse(selectedCredentials.containsKey("attr3_referent"));
 
         System.out.println("\n26.\"Prover\" -> Prover create Proof \n");
         String selfAttestedValue = "010-1234-1133";
-        String requestedCredentialsJson = new JSONObject()
-                .put("self_attested_attributes", new JSONObject().put("attr3_referent", selfAttestedValue))
-                .put("requested_attributes", new JSONObject()
-                        .put("attr1_referent", new JSONObject()
-                                .put("cred_id", credentialIdForAttribute1)
-                                .put("revealed", true)
-                        )
-                        .put("attr2_referent", new JSONObject()
-                                .put("cred_id", credentialIdForAttribute2)
-                                .put("revealed", false)
-                        )
-                )
-                .put("requested_predicates", new JSONObject()
-                        .put("predicate1_referent", new JSONObject()
-                                .put("cred_id",credentialIdForPredicate)
-                        )
-                )
-                .toString();
+        String requestedCredentialsJson = requestedCredentialsBuilder.build(proofRequestJson,
+                Collections.singletonMap("attr3_referent", selfAttestedValue),
+                Collections.singleton("attr2_referent"),
+                Collections.<String, Long>emptyMap());
 
         //3.[사용자(holder,prover)] -> 블록체인에서 Schema, Credential definition등 조회 해 VC정보와 함께 VP 생성 후 검증인에게 전송.
         System.out.println("\n26.\"Prover\" -> get Schema And Credential definition From Ledger \n");
@@ -2,8 +2,6 @@ package howto;
 
 import org.hyperledger.indy.sdk.anoncreds.Anoncreds;
 import org.hyperledger.indy.sdk.anoncreds.AnoncredsResults;
-import org.hyperledger.indy.sdk.anoncreds.CredentialsSearchForProofReq;
-import org.hyperledger.indy.sdk.blob_storage.BlobStorageReader;
 import org.hyperledger.indy.sdk.blob_storage.BlobStorageWriter;
 import org.hyperledger.indy.sdk.did.Did;
 import org.hyperledger.indy.sdk.did.DidResults;
@@ -12,7 +10,11 @@ import org.hyperledger.indy.sdk.pool.Pool;
 import org.hyperledger.indy.sdk.wallet.Wallet;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import utils.IndyMetrics;
 import utils.PoolUtils;
+import utils.TailsRegistry;
+
+import java.util.Map;
 
 import static org.hyperledger.indy.sdk.anoncreds.Anoncreds.*;
 import static org.hyperledger.indy.sdk.ledger.Ledger.*;
@@ -260,12 +262,9 @@ public class NegotiateProofWithRevocation {
 
         //===================================[Issuer] Credential(VC) 생성중 Revocation 때문에 추가되는 부분 시작 ===================================
         System.out.println("\n \"Goverment\" -> Issuer (Trust Anchor) open Tails Reader\n");
-        tailsWriterConfig = new JSONObject()
-                .put("base_dir", getIndyHomePath("tails").replace('\\', '/'))
-                .put("uri_pattern", "")
-                .toString();
-        BlobStorageReader blobStorageReaderCfg = BlobStorageReader.openReader("default", tailsWriterConfig).get();
-        int blobStorageReaderHandle = blobStorageReaderCfg.getBlobStorageReaderHandle();
+        // registry당 reader 하나를 매핑된 tails 파일과 함께 공유한다. (발행, 폐기, revocation state 생성에서 재사용)
+        TailsRegistry tailsRegistry = new TailsRegistry(getIndyHomePath("tails"));
+        int blobStorageReaderHandle = tailsRegistry.getReaderHandle(revRegDefJson);
 
         AnoncredsResults.IssuerCreateCredentialResult credential =  //VC 폐기 있을 때
                 issuerCreateCredential(govermentWallet, credOfferJson, creReqJson, credValuesJson, revRegId, blobStorageReaderHandle).get();
@@ -303,9 +302,9 @@ public class NegotiateProofWithRevocation {
         //1.[검증인(verifier)] -> 검증인은 증명요청(ProofRequest) 만들어서 사용자(prover)에게 전달.
         System.out.println("\n24.\"Verifier\" -> Create Proof Request to send prover \n");
         long to = System.currentTimeMillis() / 1000; //VC 폐기로 추가 된 부분
-        String nonce = generateNonce().get();
-        String proofRequestJson = new JSONObject()
-                .put("nonce", nonce)
+        // 템플릿은 한번만 직렬화해 두고, 요청마다 nonce와 non_revoked 구간만 채운다.
+        ProofRequestTemplates proofRequestTemplates = new ProofRequestTemplates();
+        proofRequestTemplates.register("proof_req_1", new JSONObject()
                 .put("name", "proof_req_1")
                 .put("version", "0.1")
                 .put("requested_attributes", new JSONObject()
@@ -321,61 +320,35 @@ public class NegotiateProofWithRevocation {
                                 .put("restrictions", new JSONObject().put("issuer_did", govermentDid))
                         )
                 )
-                .put("non_revoked", new JSONObject()   //VC 폐기로 추가 된 부분
-                        .put("to", to)
-
-                )
-                .toString();
+                .toString());
+        String proofRequestJson = proofRequestTemplates.get("proof_req_1").newRequest(-1, to).getJson(); //VC 폐기로 추가 된 부분 (non_revoked)
         System.out.println("proofRequestJson : " + proofRequestJson);
 
         System.out.println("\n ========= 검증인이 proofRequest를 증명인에게 전달했다고 가정 ========= \n");
 
         //2.[사용자(holder,prover)] -> 증명요청(ProofRequest) 수신한 사용자는 보유한 VC 중 주어진 ProofRequest에 해당되는 VC 검색 해 requestedCredentialsJson 만듬.
         System.out.println("\n25.\"Prover\" -> Prover gets Credentials for Proof Request \n");
-        CredentialsSearchForProofReq credentialsSearch = CredentialsSearchForProofReq.open(proverWallet, proofRequestJson, null).get();
-        JSONArray credentialsForAttribute1 = new JSONArray(credentialsSearch.fetchNextCredentials("attr1_referent", 100).get());
-        String credentialIdForAttribute1 = credentialsForAttribute1.getJSONObject(0).getJSONObject("cred_info").getString("referent");
-        System.out.println("credentialsForAttribute1.getJSONObject(0).toString() : " + credentialsForAttribute1.getJSONObject(0).toString());
+        // referent별로 동시에 검색하고 첫 후보를 찾으면 멈춘다. 검색 핸들은 select 안에서 닫힌다.
+        Map<String, JSONObject> selectedCredentials =
+                CredentialSelector.select(proverWallet, proofRequestJson, null, CredentialSelector.Policy.first());
+        String credentialIdForAttribute1 = CredentialSelector.credentialId(selectedCredentials.get("attr1_referent"));
+        System.out.println("selectedCredentials.get(\"attr1_referent\") : " + selectedCredentials.get("attr1_referent"));
 
-        JSONArray credentialsForAttribute2 = new JSONArray(credentialsSearch.fetchNextCredentials("attr2_referent", 100).get());
-        String credentialIdForAttribute2 = credentialsForAttribute2.getJSONObject(0).getJSONObject("cred_info").getString("referent");
-        System.out.println("credentialsForAttribute2.getJSONObject(0).toString() : " + credentialsForAttribute2.getJSONObject(0).toString());
+        String credentialIdForAttribute2 = CredentialSelector.credentialId(selectedCredentials.get("attr2_referent"));
+        System.out.println("selectedCredentials.get(\"attr2_referent\") : " + selectedCredentials.get("attr2_referent"));
 
-        JSONArray credentialsForAttribute3 = new JSONArray(credentialsSearch.fetchNextCredentials("attr3_referent", 100).get());
-        assertEquals(0, credentialsForAttribute3.length());
+        assertFalse(selectedCredentials.containsKey("attr3_referent"));
 
-        JSONArray credentialsForPredicate = new JSONArray(credentialsSearch.fetchNextCredentials("predicate1_referent", 100).get());
-        String credentialIdForPredicate = credentialsForPredicate.getJSONObject(0).getJSONObject("cred_info").getString("referent");
-        credentialsSearch.close();
+        String credentialIdForPredicate = CredentialSelector.credentialId(selectedCredentials.get("predicate1_referent"));
 
         System.out.println("\n\"Prover\" -> Prover create  RevocationState \n");
 
-        String getRevocReqDefRequest = buildGetRevocRegDefRequest(proverDID, revRegId).get(); //VC 폐기로 추가 된 부분
-        String getRevocRegDefResponse = submitRequest(pool, getRevocReqDefRequest).get();
-        System.out.println("getRevocRegDefResponse : "+ getRevocRegDefResponse);
-        LedgerResults.ParseResponseResult revocRegDefFromLedger = parseGetRevocRegDefResponse(getRevocRegDefResponse).get();
-        String revocRegDefIdFromLedger = revocRegDefFromLedger.getId();
-        String revocRegDefJsonFromLedger = revocRegDefFromLedger.getObjectJson();
-        System.out.println("revocRegDefIdFromLedger : " + revocRegDefIdFromLedger);
-        System.out.println("revocRegDefJsonFromLedger : " + revocRegDefJsonFromLedger);
-
-
-        String getRevocRegDeltaRequest = buildGetRevocRegDeltaRequest(proverDID, revRegId, -1, (int) to).get(); //VC 폐기로 추가 된 부분
-        String revocRegDeltaResponse = PoolUtils.ensurePreviousRequestApplied(pool, getRevocRegDeltaRequest, innerResponse -> {
-            JSONObject innerResponseObject = new JSONObject(innerResponse);
-            return !innerResponseObject.getJSONObject("result").isNull("seqNo");
-        });
-
-        System.out.println("revocRegDeltaResponse: " + revocRegDeltaResponse);
-        LedgerResults.ParseRegistryResponseResult revocRegDeltaFromLedger = parseGetRevocRegDeltaResponse(revocRegDeltaResponse).get();
-        String revocRegDeltaIdFromLedger = revocRegDeltaFromLedger.getId();
-        String revocRegDeltaJsonFromLedger = revocRegDeltaFromLedger.getObjectJson();
-        long revocRegDeltaTimeStampFromLedger = revocRegDeltaFromLedger.getTimestamp();
-        System.out.println("revocRegDeltaIdFromLedger : " + revocRegDeltaIdFromLedger);
-        System.out.println("revocRegDeltaJsonFromLedger : " + revocRegDeltaJsonFromLedger);
+        // credential별 마지막 revocation state를 보관해 두고, 다음 proof부터는 그 이후 delta만 받아 갱신한다.
+        RevocationStateStore revocationStateStore = new RevocationStateStore(pool, proverDID, tailsRegistry);
+        RevocationStateStore.RevocationState revocationState = revocationStateStore.getState(revRegId, credRevId, to); //VC 폐기로 추가 된 부분
+        String revStateJson = revocationState.getStateJson();
+        long revocRegDeltaTimeStampFromLedger = revocationState.getTimestamp();
         System.out.println("revocRegDeltaTimeStampFromLedger : " + revocRegDeltaTimeStampFromLedger);
-        //credRevId 값을 발행자가 홀더에게 proofReq랑 같이 전달해야하나?
-        String revStateJson = createRevocationState(blobStorageReaderHandle, revocRegDefJsonFromLedger, revocRegDeltaJsonFromLedger, revocRegDeltaTimeStampFromLedger, credRevId).get();  //VC 폐기로 추가 된 부분
 
         System.out.println("\n26.\"Prover\" -> Prover create Proof \n");
         String selfAttestedValue = "010-1234-1133";
@@ -463,19 +436,13 @@ public class NegotiateProofWithRevocation {
 
         assertEquals(selfAttestedValue, proof.getJSONObject("requested_proof").getJSONObject("self_attested_attrs").getString("attr3_referent"));
 
-        LedgerResults.ParseResponseResult schemaFromLedgerForVerifier = IndyUtil.getSchema(pool, verifierDid, identifier.getString("schema_id"));
-        LedgerResults.ParseResponseResult credDefFromLedgerForVerifier = IndyUtil.getCredDef(pool, verifierDid, identifier.getString("cred_def_id"));
-        LedgerResults.ParseResponseResult revocRegDefFromLedgerForVerifier = IndyUtil.getRevocRegDef(pool, verifierDid, identifier.getString("rev_reg_id"));
-        LedgerResults.ParseRegistryResponseResult revocRegFromLedger = IndyUtil.getRevocReg(pool, verifierDid, identifier.getString("rev_reg_id"), identifier.getInt("timestamp"));
-        String revocRegIdFromLedger = revocRegFromLedger.getId();
-        String revocRegJsonFromLedger = revocRegFromLedger.getObjectJson();
-        long revocRegTimestamp = revocRegFromLedger.getTimestamp();
-
-        //revocRegDefFromLedgerForVerifier.getId() , revocRegFromLedger.getId() 같은거임
-        String schemasForVerifier = new JSONObject().put(schemaFromLedgerForVerifier.getId(), new JSONObject(schemaFromLedgerForVerifier.getObjectJson())).toString();
-        String credentialDefsForVerifier =  new JSONObject().put(credDefFromLedgerForVerifier.getId(),  new JSONObject(credDefFromLedgerForVerifier.getObjectJson())).toString();
-        String revocRegDefsJson = new JSONObject().put(revocRegDefFromLedgerForVerifier.getId(), new JSONObject(revocRegDefFromLedgerForVerifier.getObjectJson())).toString();
-        String revocRegsJson = new JSONObject().put(revocRegIdFromLedger, new JSONObject().put(String.valueOf(revocRegTimestamp), new JSONObject(revocRegJsonFromLedger))).toString();
+        //proof의 identifiers에 있는 Schema, CredDef, RevocRegDef, RevocReg를 동시에 조회
+        ProofLedgerResolver verifierResolver = new ProofLedgerResolver(pool, verifierDid);
+        ProofLedgerResolver.VerificationInputs verificationInputs = verifierResolver.resolve(proofJson);
+        String schemasForVerifier = verificationInputs.getSchemasJson();
+        String credentialDefsForVerifier = verificationInputs.getCredentialDefsJson();
+        String revocRegDefsJson = verificationInputs.getRevocRegDefsJson();
+        String revocRegsJson = verificationInputs.getRevocRegsJson();
 
         //String revocRegDefs = new JSONObject().toString(); //폐기여부를 검증해야 하는 VC일 경우 블록체인에서 가져와야 함.
         //String revocRegs = new JSONObject().toString(); //폐기여부를 검증해야 하는 VC일 경우 블록체인에서 가져와야 함.
@@ -491,13 +458,9 @@ public class NegotiateProofWithRevocation {
          * 3.[검증인(verifier)] -> 검증인은 속성들 확인하고 블록체인에서 Schema, Credential definition등을 조회 해 사용자 VP 검증.
          */
         //=================================== [Issuer] -> VC 폐기 (Credential revoke) 시작 ===================================
-        blobStorageReaderCfg = BlobStorageReader.openReader("default", tailsWriterConfig).get();
-        blobStorageReaderHandle = blobStorageReaderCfg.getBlobStorageReaderHandle();
-
         // Issuer revokes credential
         System.out.println("\n \"Issuer\" -> revoke Credential \n");
-        revRegDeltaJson = issuerRevokeCredential(govermentWallet, blobStorageReaderCfg.getBlobStorageReaderHandle()
-                , revRegId, credRevId).get();
+        revRegDeltaJson = issuerRevokeCredential(govermentWallet, blobStorageReaderHandle, revRegId, credRevId).get();
 
         // Issuer post RevocationRegistryDelta to Ledger
         System.out.println("\n \"Issuer\" -> Send RevocRegEntryRequest to Ledger \n");
@@ -509,27 +472,12 @@ public class NegotiateProofWithRevocation {
         Thread.sleep(3000);
 
         //=================================== 사용자(Holeder, Prover)가 VP 생성 후 전달===================================
-        long from = to; //VC 발행시점
         to = System.currentTimeMillis() / 1000; //현재
 
-        System.out.println("\n \"Prover\" -> gets RevocationRegistryDelta from Ledger \n");
-        getRevocRegDeltaRequest = buildGetRevocRegDeltaRequest(proverDID, revRegId, (int) from, (int) to).get();
-        String getRevocRegDeltaResponse = PoolUtils.ensurePreviousRequestApplied(pool, getRevocRegDeltaRequest, innerResponse -> {
-            JSONObject innerResponseObject = new JSONObject(innerResponse);
-            return !innerResponseObject.getJSONObject("result").isNull("seqNo");
-        });
-        revocRegDeltaFromLedger = parseGetRevocRegDeltaResponse(getRevocRegDeltaResponse).get();
-
-        revocRegDeltaIdFromLedger = revocRegDeltaFromLedger.getId();
-        revocRegDeltaJsonFromLedger = revocRegDeltaFromLedger.getObjectJson();
-        revocRegDeltaTimeStampFromLedger = revocRegDeltaFromLedger.getTimestamp();
-
-        System.out.println("\n \"Prover\" -> gets getRevocRegDef from Ledger \n");
-        LedgerResults.ParseResponseResult getRevRegDefResponse = IndyUtil.getRevocRegDef(pool, proverDID, revocRegDeltaIdFromLedger);
-        revRegDefJson = getRevRegDefResponse.getObjectJson();
-
-        revStateJson = Anoncreds.createRevocationState(blobStorageReaderHandle,
-                revRegDefJson, revocRegDeltaJsonFromLedger, revocRegDeltaTimeStampFromLedger, credRevId).get();
+        System.out.println("\n \"Prover\" -> update RevocationState with RevocationRegistryDelta since last proof \n");
+        revocationState = revocationStateStore.getState(revRegId, credRevId, to);
+        revStateJson = revocationState.getStateJson();
+        revocRegDeltaTimeStampFromLedger = revocationState.getTimestamp();
 
         selfAttestedValue = "010-1234-1133";
         requestedCredentialsJson = new JSONObject()
@@ -563,17 +511,9 @@ public class NegotiateProofWithRevocation {
                 linkSecretId, schemasForProver, credentialDefsForProver, revocStates).get();
 
         //=================================== 검증자(Verifier)가 VP 검증 ===================================
-        proof = new JSONObject(proofJson);
-        identifier = proof.getJSONArray("identifiers").getJSONObject(0);
-
         System.out.println("\n \"Verifier\" -> get RevocReg From Ledger\n");
-        revocRegFromLedger = IndyUtil.getRevocReg(pool, verifierDid, identifier.getString("rev_reg_id"), identifier.getInt("timestamp"));
-        revocRegIdFromLedger = revocRegFromLedger.getId();
-        revocRegJsonFromLedger = revocRegFromLedger.getObjectJson();
-        revocRegTimestamp = revocRegFromLedger.getTimestamp();
-
-        revocRegsJson = new JSONObject().put(revocRegIdFromLedger, new JSONObject().
-                put(String.valueOf(revocRegTimestamp), new JSONObject(revocRegJsonFromLedger))).toString();
+        verificationInputs = verifierResolver.resolve(proofJson);
+        revocRegsJson = verificationInputs.getRevocRegsJson();
 
         System.out.println("\n \"Verifier\" -> verify Proof \n");
         valid = verifierVerifyProof(proofRequestJson, proofJson, schemasForVerifier,
@@ -601,6 +541,8 @@ public class NegotiateProofWithRevocation {
         System.out.println("\n31. Delete pool ledger config\n");
         Pool.deletePoolLedgerConfig(poolName).get();
 
+        System.out.println("\nLedger request metrics\n" + IndyMetrics.dump());
+
         System.out.println("\n################## howto.NegotiateProofWithRevocation -> completed ##################\n");
     }
 
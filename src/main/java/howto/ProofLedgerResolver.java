@@ -0,0 +1,123 @@
+package howto;
+
+import org.hyperledger.indy.sdk.ledger.LedgerResults;
+import org.hyperledger.indy.sdk.pool.Pool;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.IndyFutures;
+import utils.LedgerSubmitter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 검증인이 verifierVerifyProof에 넘길 schemas, credentialDefs, revRegDefs, revRegs JSON을 proof의 identifiers로부터 만든다.
+ * 중복된 ID는 한번만 조회하고 모든 렛저 조회를 동시에 시작하므로, 전체 지연시간은 가장 느린 조회 하나에 맞춰진다.
+ * Schema, CredDef, RevocRegDef는 IndyUtil의 캐시를 거친다.
+ */
+public class ProofLedgerResolver {
+
+    public static class VerificationInputs {
+        private final String schemasJson;
+        private final String credentialDefsJson;
+        private final String revocRegDefsJson;
+        private final String revocRegsJson;
+
+        VerificationInputs(String schemasJson, String credentialDefsJson, String revocRegDefsJson, String revocRegsJson) {
+            this.schemasJson = schemasJson;
+            this.credentialDefsJson = credentialDefsJson;
+            this.revocRegDefsJson = revocRegDefsJson;
+            this.revocRegsJson = revocRegsJson;
+        }
+
+        public String getSchemasJson() {
+            return schemasJson;
+        }
+
+        public String getCredentialDefsJson() {
+            return credentialDefsJson;
+        }
+
+        public String getRevocRegDefsJson() {
+            return revocRegDefsJson;
+        }
+
+        public String getRevocRegsJson() {
+            return revocRegsJson;
+        }
+    }
+
+    private final LedgerSubmitter ledger;
+    private final String submitterDid;
+
+    public ProofLedgerResolver(Pool pool, String submitterDid) {
+        this(LedgerSubmitter.of(pool), submitterDid);
+    }
+
+    public ProofLedgerResolver(LedgerSubmitter ledger, String submitterDid) {
+        this.ledger = ledger;
+        this.submitterDid = submitterDid;
+    }
+
+    public VerificationInputs resolve(String proofJson) throws ExecutionException, InterruptedException {
+        return IndyFutures.get(resolveAsync(proofJson));
+    }
+
+    public CompletableFuture<VerificationInputs> resolveAsync(String proofJson) {
+        JSONArray identifiers = new JSONObject(proofJson).getJSONArray("identifiers");
+
+        Map<String, CompletableFuture<LedgerResults.ParseResponseResult>> schemas = new LinkedHashMap<>();
+        Map<String, CompletableFuture<LedgerResults.ParseResponseResult>> credDefs = new LinkedHashMap<>();
+        Map<String, CompletableFuture<LedgerResults.ParseResponseResult>> revocRegDefs = new LinkedHashMap<>();
+        Map<String, CompletableFuture<LedgerResults.ParseRegistryResponseResult>> revocRegs = new LinkedHashMap<>();
+
+        for (int i = 0; i < identifiers.length(); i++) {
+            JSONObject identifier = identifiers.getJSONObject(i);
+            schemas.computeIfAbsent(identifier.getString("schema_id"), id -> IndyUtil.getSchemaAsync(ledger, submitterDid, id));
+            credDefs.computeIfAbsent(identifier.getString("cred_def_id"), id -> IndyUtil.getCredDefAsync(ledger, submitterDid, id));
+
+            String revRegId = identifier.optString("rev_reg_id", null);
+            if (revRegId == null) {
+                continue;
+            }
+            revocRegDefs.computeIfAbsent(revRegId, id -> IndyUtil.getRevocRegDefAsync(ledger, submitterDid, id));
+            if (!identifier.isNull("timestamp")) {
+                long timestamp = identifier.getLong("timestamp");
+                revocRegs.computeIfAbsent(revRegId + "@" + timestamp, key -> IndyUtil.getRevocRegAsync(ledger, submitterDid, revRegId, timestamp));
+            }
+        }
+
+        List<CompletableFuture<?>> all = new ArrayList<>();
+        all.addAll(schemas.values());
+        all.addAll(credDefs.values());
+        all.addAll(revocRegDefs.values());
+        all.addAll(revocRegs.values());
+
+        return CompletableFuture.allOf(all.toArray(new CompletableFuture[0])).thenApply(done -> {
+            JSONObject revocRegsJson = new JSONObject();
+            for (CompletableFuture<LedgerResults.ParseRegistryResponseResult> future : revocRegs.values()) {
+                LedgerResults.ParseRegistryResponseResult revocReg = future.join();
+                JSONObject byTimestamp = revocRegsJson.optJSONObject(revocReg.getId());
+                if (byTimestamp == null) {
+                    byTimestamp = new JSONObject();
+                    revocRegsJson.put(revocReg.getId(), byTimestamp);
+                }
+                byTimestamp.put(String.valueOf(revocReg.getTimestamp()), new JSONObject(revocReg.getObjectJson()));
+            }
+            return new VerificationInputs(toJson(schemas), toJson(credDefs), toJson(revocRegDefs), revocRegsJson.toString());
+        });
+    }
+
+    private static String toJson(Map<String, CompletableFuture<LedgerResults.ParseResponseResult>> results) {
+        JSONObject json = new JSONObject();
+        for (CompletableFuture<LedgerResults.ParseResponseResult> future : results.values()) {
+            LedgerResults.ParseResponseResult result = future.join();
+            json.put(result.getId(), new JSONObject(result.getObjectJson()));
+        }
+        return json.toString();
+    }
+}
@@ -0,0 +1,145 @@
+package howto;
+
+import org.json.JSONObject;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 검증인이 반복해서 보내는 proof request를 템플릿으로 등록해 둔다.
+ * 요청마다 바뀌는 값은 nonce와 non_revoked 구간뿐이므로, 등록할 때 나머지 부분을 한번만 직렬화해 두고
+ * 요청을 만들 때는 JSONObject를 만들지 않고 문자열 슬롯만 채운다.
+ * 만들어진 ProofRequest는 템플릿 id를 함께 가지고 있어서 검증인이 템플릿별 상태를 캐시할 수 있다.
+ */
+public class ProofRequestTemplates {
+
+    // libindy generateNonce와 같은 80bit 10진수 nonce
+    private static final int NONCE_BITS = 80;
+    private static final SecureRandom random = new SecureRandom();
+
+    public static class ProofRequest {
+        private final String templateId;
+        private final String nonce;
+        private final String json;
+
+        ProofRequest(String templateId, String nonce, String json) {
+            this.templateId = templateId;
+            this.nonce = nonce;
+            this.json = json;
+        }
+
+        public String getTemplateId() {
+            return templateId;
+        }
+
+        public String getNonce() {
+            return nonce;
+        }
+
+        public String getJson() {
+            return json;
+        }
+    }
+
+    public static class Template {
+        private final String templateId;
+        // {...,"nonce":"  까지
+        private final String prefix;
+
+        Template(String templateId, String prefix) {
+            this.templateId = templateId;
+            this.prefix = prefix;
+        }
+
+        public String getTemplateId() {
+            return templateId;
+        }
+
+        public ProofRequest newRequest() {
+            return fill(newNonce(), -1, -1);
+        }
+
+        /** non_revoked 구간을 넣는다. from이 0보다 작으면 to만 넣는다. */
+        public ProofRequest newRequest(long from, long to) {
+            return fill(newNonce(), from, to);
+        }
+
+        /**
+         * nonce를 직접 지정한다. to가 0보다 작으면 non_revoked를 넣지 않는다.
+         * nonce는 JSON 문자열에 그대로 붙으므로 숫자로만 된 값만 받는다.
+         */
+        public ProofRequest fill(String nonce, long from, long to) {
+            if (!isDecimal(nonce)) {
+                throw new IllegalArgumentException("nonce는 10진수 숫자여야 함: " + nonce);
+            }
+            StringBuilder json = new StringBuilder(prefix.length() + 64)
+                    .append(prefix)
+                    .append(nonce)
+                    .append('"');
+            if (to >= 0) {
+                json.append(",\"non_revoked\":{");
+                if (from >= 0) {
+                    json.append("\"from\":").append(from).append(',');
+                }
+                json.append("\"to\":").append(to).append('}');
+            }
+            json.append('}');
+            return new ProofRequest(templateId, nonce, json.toString());
+        }
+
+        private static boolean isDecimal(String value) {
+            if (value == null || value.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < '0' || c > '9') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Template> templates = new ConcurrentHashMap<>();
+
+    /**
+     * proof request JSON을 템플릿으로 컴파일해 등록한다. 템플릿에 nonce나 non_revoked가 있으면 무시된다.
+     * 같은 id로 다시 등록하면 교체된다.
+     */
+    public Template register(String templateId, String proofRequestJson) {
+        JSONObject template = new JSONObject(proofRequestJson);
+        template.remove("nonce");
+        template.remove("non_revoked");
+        if (!template.has("requested_attributes") && !template.has("requested_predicates")) {
+            throw new IllegalArgumentException("requested_attributes나 requested_predicates가 없는 템플릿: " + templateId);
+        }
+
+        String body = template.toString();
+        String prefix = body.substring(0, body.length() - 1) + (template.length() > 0 ? "," : "") + "\"nonce\":\"";
+        Template compiled = new Template(templateId, prefix);
+        templates.put(templateId, compiled);
+        return compiled;
+    }
+
+    public Template get(String templateId) {
+        Template template = templates.get(templateId);
+        if (template == null) {
+            throw new IllegalArgumentException("등록되지 않은 proof request 템플릿: " + templateId);
+        }
+        return template;
+    }
+
+    public boolean contains(String templateId) {
+        return templates.containsKey(templateId);
+    }
+
+    public void remove(String templateId) {
+        templates.remove(templateId);
+    }
+
+    static String newNonce() {
+        return new BigInteger(NONCE_BITS, random).toString();
+    }
+}
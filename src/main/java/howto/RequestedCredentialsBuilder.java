@@ -0,0 +1,204 @@
+package howto;
+
+import org.hyperledger.indy.sdk.anoncreds.Anoncreds;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import utils.IndyFutures;
+import utils.LedgerCache;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * proof request와 prover 지갑으로 proverCreateProof에 넘길 requested_credentials JSON을 자동으로 만든다.
+ * referent → credential 선택 결과는 proof request의 모양(referent, 속성 이름, predicate, restrictions, non_revoked의 from/to 유무)으로 만든
+ * fingerprint를 키로 캐시되므로, nonce나 non_revoked 시각만 다른 같은 모양의 proof request에는 지갑 검색을 다시 하지 않는다.
+ * credential을 저장하거나 삭제하면 선택 결과가 바뀔 수 있으므로 캐시를 모두 비운다. (storeCredential/deleteCredential 사용)
+ */
+public class RequestedCredentialsBuilder {
+
+    private static final long SELECTION_CACHE_MAX_WEIGHT = 4 * 1024 * 1024;
+
+    private final Wallet proverWallet;
+    private final CredentialSelector.Policy policy;
+    private final LedgerCache<Map<String, JSONObject>> selections;
+
+    public RequestedCredentialsBuilder(Wallet proverWallet, CredentialSelector.Policy policy) {
+        this(proverWallet, policy, SELECTION_CACHE_MAX_WEIGHT);
+    }
+
+    public RequestedCredentialsBuilder(Wallet proverWallet, CredentialSelector.Policy policy, long cacheMaxWeight) {
+        this.proverWallet = proverWallet;
+        this.policy = policy;
+        this.selections = new LedgerCache<>(cacheMaxWeight, RequestedCredentialsBuilder::weigh);
+    }
+
+    public String build(String proofRequestJson, Map<String, String> selfAttested) throws ExecutionException, InterruptedException {
+        return build(proofRequestJson, selfAttested, Collections.<String>emptySet(), Collections.<String, Long>emptyMap());
+    }
+
+    /**
+     * @param selfAttested       맞는 credential이 없는 속성 referent에 넣을 self attested 값
+     * @param unrevealed         revealed=false로 보낼 속성 referent
+     * @param revocTimestamps    rev_reg_id → revocation state timestamp. revocation을 지원하는 credential에 timestamp로 들어간다.
+     */
+    public String build(String proofRequestJson, Map<String, String> selfAttested, Set<String> unrevealed,
+                        Map<String, Long> revocTimestamps) throws ExecutionException, InterruptedException {
+        JSONObject proofRequest = new JSONObject(proofRequestJson);
+        Map<String, JSONObject> selected = select(proofRequestJson);
+
+        JSONObject selfAttestedAttributes = new JSONObject();
+        JSONObject requestedAttributes = new JSONObject();
+        JSONObject requestedPredicates = new JSONObject();
+
+        JSONObject attributes = proofRequest.optJSONObject("requested_attributes");
+        if (attributes != null) {
+            for (String referent : attributes.keySet()) {
+                JSONObject credential = selected.get(referent);
+                if (credential != null) {
+                    requestedAttributes.put(referent, requested(credential, revocTimestamps).put("revealed", !unrevealed.contains(referent)));
+                } else if (selfAttested.containsKey(referent)) {
+                    selfAttestedAttributes.put(referent, selfAttested.get(referent));
+                } else {
+                    throw new IllegalStateException("referent에 맞는 credential이 없음: " + referent);
+                }
+            }
+        }
+        JSONObject predicates = proofRequest.optJSONObject("requested_predicates");
+        if (predicates != null) {
+            for (String referent : predicates.keySet()) {
+                JSONObject credential = selected.get(referent);
+                if (credential == null) {
+                    throw new IllegalStateException("predicate에 맞는 credential이 없음: " + referent);
+                }
+                requestedPredicates.put(referent, requested(credential, revocTimestamps));
+            }
+        }
+
+        return new JSONObject()
+                .put("self_attested_attributes", selfAttestedAttributes)
+                .put("requested_attributes", requestedAttributes)
+                .put("requested_predicates", requestedPredicates)
+                .toString();
+    }
+
+    /**
+     * referent → 선택된 credential({"cred_info": ..., "interval": ...}). 반환된 객체는 캐시와 공유되므로 수정하지 않는다.
+     * 캐시된 결과의 interval은 처음 조회한 proof request의 값이다.
+     */
+    public Map<String, JSONObject> select(String proofRequestJson) throws ExecutionException, InterruptedException {
+        return IndyFutures.get(selections.get(fingerprint(proofRequestJson), key ->
+                CredentialSelector.selectAsync(proverWallet, proofRequestJson, null, policy).thenApply(Collections::unmodifiableMap)));
+    }
+
+    /** proverStoreCredential 후 선택 캐시를 비운다. 저장된 credential id를 반환한다. */
+    public String storeCredential(String credId, String credReqMetadataJson, String credJson, String credDefJson,
+                                  String revRegDefJson) throws ExecutionException, InterruptedException {
+        try {
+            return IndyFutures.get(IndyFutures.call(() ->
+                    Anoncreds.proverStoreCredential(proverWallet, credId, credReqMetadataJson, credJson, credDefJson, revRegDefJson)));
+        } finally {
+            invalidate();
+        }
+    }
+
+    /** proverDeleteCredential 후 선택 캐시를 비운다. */
+    public void deleteCredential(String credId) throws ExecutionException, InterruptedException {
+        try {
+            IndyFutures.get(IndyFutures.call(() -> Anoncreds.proverDeleteCredential(proverWallet, credId)));
+        } finally {
+            invalidate();
+        }
+    }
+
+    /** 지갑의 credential이 다른 경로로 바뀌었을 때 호출한다. */
+    public void invalidate() {
+        selections.invalidateAll();
+    }
+
+    public LedgerCache<Map<String, JSONObject>> getSelectionCache() {
+        return selections;
+    }
+
+    /**
+     * nonce, name, version처럼 선택 결과에 영향이 없는 값을 뺀 proof request의 정규화된 모양.
+     * non_revoked는 요청마다 시각이 바뀌므로 from/to가 있는지만 남긴다.
+     * JSON 키를 정렬해서 만들기 때문에 키 순서가 달라도 같은 fingerprint가 나온다.
+     */
+    static String fingerprint(String proofRequestJson) {
+        JSONObject proofRequest = new JSONObject(proofRequestJson);
+        StringBuilder fingerprint = new StringBuilder();
+        for (String section : new String[]{"requested_attributes", "requested_predicates", "non_revoked"}) {
+            fingerprint.append(section).append('=');
+            if ("non_revoked".equals(section)) {
+                interval(proofRequest.opt(section), fingerprint);
+            } else {
+                canonical(proofRequest.opt(section), fingerprint);
+            }
+            fingerprint.append(';');
+        }
+        return fingerprint.toString();
+    }
+
+    private static void interval(Object value, StringBuilder out) {
+        if (value instanceof JSONObject) {
+            JSONObject interval = (JSONObject) value;
+            out.append(interval.isNull("from") ? '-' : 'f').append(interval.isNull("to") ? '-' : 't');
+        } else {
+            out.append(value);
+        }
+    }
+
+    private static void canonical(Object value, StringBuilder out) {
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            out.append('{');
+            for (String key : new TreeSet<>(object.keySet())) {
+                out.append(JSONObject.quote(key)).append(':');
+                if ("non_revoked".equals(key)) {
+                    interval(object.get(key), out);
+                } else {
+                    canonical(object.get(key), out);
+                }
+                out.append(',');
+            }
+            out.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            out.append('[');
+            for (int i = 0; i < array.length(); i++) {
+                canonical(array.get(i), out);
+                out.append(',');
+            }
+            out.append(']');
+        } else if (value instanceof String) {
+            out.append(JSONObject.quote((String) value));
+        } else {
+            out.append(value);
+        }
+    }
+
+    private static JSONObject requested(JSONObject credential, Map<String, Long> revocTimestamps) {
+        JSONObject credInfo = credential.getJSONObject("cred_info");
+        JSONObject requested = new JSONObject().put("cred_id", credInfo.getString("referent"));
+        if (!credInfo.isNull("rev_reg_id")) {
+            Long timestamp = revocTimestamps.get(credInfo.getString("rev_reg_id"));
+            if (timestamp != null) {
+                requested.put("timestamp", timestamp.longValue());
+            }
+        }
+        return requested;
+    }
+
+    private static long weigh(String fingerprint, Map<String, JSONObject> selection) {
+        long weight = fingerprint.length();
+        for (Map.Entry<String, JSONObject> entry : selection.entrySet()) {
+            weight += entry.getKey().length() + entry.getValue().toString().length();
+        }
+        return weight;
+    }
+}
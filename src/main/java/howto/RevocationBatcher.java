@@ -0,0 +1,221 @@
+package howto;
+
+import org.hyperledger.indy.sdk.anoncreds.Anoncreds;
+import org.hyperledger.indy.sdk.pool.Pool;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import utils.IndyFutures;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 폐기(revoke)를 registry별로 모았다가 window마다 REVOC_REG_ENTRY 하나로 렛저에 올린다.
+ * 대량 폐기 시 VC마다 렛저 쓰기를 하지 않도록, issuerRevokeCredential이 돌려준 delta들을
+ * Anoncreds.issuerMergeRevocationRegistryDeltas로 합친 뒤 window가 maxBatchSize개 찼거나 windowMillis가 지나면 전송한다.
+ *
+ * 같은 registry의 delta는 이전 accumulator에 이어지므로 registry별로 폐기, 병합, 전송을 순서대로 직렬화한다.
+ * revoke가 돌려준 future는 해당 폐기가 포함된 entry가 렛저에 기록되면 그 응답으로 완료된다.
+ *
+ * issuerRevokeCredential이 성공하면 지갑 accumulator는 이미 바뀌었으므로 일시적인 실패(timeout, REQNACK 등)로는 delta를 버리지 않는다.
+ * MAX_SEND_ATTEMPTS번 연달아 실패하면 간격을 늘려 가며 계속 다시 보내고, 그동안 waiter는 기다리며 다음 window는 그 뒤에 보낸다.
+ * 렛저가 REJECT한 delta는 다시 보내도 같은 결과이므로 버리고 그 window의 future만 실패시킨 뒤 다음 window로 넘어간다.
+ */
+public class RevocationBatcher {
+
+    private static final int MAX_SEND_ATTEMPTS = 3;
+    private static final long SEND_RETRY_BACKOFF = 200;
+    private static final long MAX_PUBLISH_RETRY_BACKOFF = 30_000;
+
+    // 렛저가 요청을 거부함(REJECT). 다시 보내도 결과가 같다.
+    private static class EntryRejectedException extends IllegalStateException {
+        EntryRejectedException(String message) {
+            super(message);
+        }
+    }
+
+    private static class Batch {
+        String deltaJson;
+        final List<CompletableFuture<String>> waiters = new ArrayList<>();
+    }
+
+    private static class RegistryQueue {
+        // 폐기와 병합 순서
+        CompletableFuture<Void> tail = CompletableFuture.completedFuture(null);
+        // 렛저 전송 순서
+        CompletableFuture<Void> published = CompletableFuture.completedFuture(null);
+        Batch open;
+    }
+
+    private final LedgerSubmitter ledger;
+    private final Wallet issuerWallet;
+    private final String issuerDid;
+    private final int maxBatchSize;
+    private final long windowMillis;
+    private final ConcurrentHashMap<String, RegistryQueue> queues = new ConcurrentHashMap<>();
+    private final AtomicLong revoked = new AtomicLong();
+    private final AtomicLong entries = new AtomicLong();
+
+    public RevocationBatcher(Pool pool, Wallet issuerWallet, String issuerDid, int maxBatchSize, long windowMillis) {
+        this(LedgerSubmitter.of(pool), issuerWallet, issuerDid, maxBatchSize, windowMillis);
+    }
+
+    public RevocationBatcher(LedgerSubmitter ledger, Wallet issuerWallet, String issuerDid, int maxBatchSize, long windowMillis) {
+        this.ledger = ledger;
+        this.issuerWallet = issuerWallet;
+        this.issuerDid = issuerDid;
+        this.maxBatchSize = maxBatchSize;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * VC 하나를 폐기하고 현재 window에 넣는다. 반환된 future는 REVOC_REG_ENTRY 응답으로 완료되며,
+     * 폐기가 실패하거나 렛저가 entry를 거부(REJECT)하면 예외로 완료된다.
+     */
+    public CompletableFuture<String> revoke(String revRegId, int tailsReaderHandle, String credRevId) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        RegistryQueue queue = queues.computeIfAbsent(revRegId, id -> new RegistryQueue());
+        synchronized (queue) {
+            queue.tail = queue.tail
+                    .thenCompose(ignored -> IndyFutures.call(() -> Anoncreds.issuerRevokeCredential(issuerWallet, tailsReaderHandle, revRegId, credRevId)))
+                    .thenCompose(delta -> append(queue, revRegId, delta, result))
+                    .exceptionally(error -> {
+                        result.completeExceptionally(error);
+                        return null;
+                    });
+        }
+        return result;
+    }
+
+    /** 모든 registry의 열린 window를 지금 전송한다. */
+    public void flushAll() {
+        for (Map.Entry<String, RegistryQueue> entry : queues.entrySet()) {
+            RegistryQueue queue = entry.getValue();
+            synchronized (queue) {
+                Batch batch = queue.open;
+                if (batch != null) {
+                    queue.tail = queue.tail.thenRun(() -> flush(queue, entry.getKey(), batch));
+                }
+            }
+        }
+    }
+
+    public long getRevokedCount() {
+        return revoked.get();
+    }
+
+    public long getEntryCount() {
+        return entries.get();
+    }
+
+    // tail 체인 안에서만 호출되므로 같은 registry의 append/flush는 동시에 실행되지 않는다.
+    private CompletableFuture<Void> append(RegistryQueue queue, String revRegId, String deltaJson, CompletableFuture<String> waiter) {
+        Batch batch;
+        synchronized (queue) {
+            batch = queue.open;
+            if (batch == null) {
+                Batch opened = new Batch();
+                queue.open = opened;
+                batch = opened;
+                IndyFutures.delay(windowMillis).thenRun(() -> {
+                    synchronized (queue) {
+                        queue.tail = queue.tail.thenRun(() -> flush(queue, revRegId, opened));
+                    }
+                });
+            }
+        }
+        Batch current = batch;
+        CompletableFuture<String> merged = current.deltaJson == null
+                ? CompletableFuture.completedFuture(deltaJson)
+                : IndyFutures.call(() -> Anoncreds.issuerMergeRevocationRegistryDeltas(current.deltaJson, deltaJson));
+        return merged.handle((mergedJson, error) -> {
+            if (error != null) {
+                // 병합이 안 되면 지금까지 모은 window를 먼저 보내고 이 delta로 새 window를 연다.
+                flush(queue, revRegId, current);
+                return append(queue, revRegId, deltaJson, waiter);
+            }
+            revoked.incrementAndGet();
+            current.deltaJson = mergedJson;
+            current.waiters.add(waiter);
+            if (current.waiters.size() >= maxBatchSize) {
+                flush(queue, revRegId, current);
+            }
+            return CompletableFuture.<Void>completedFuture(null);
+        }).thenCompose(Function.identity());
+    }
+
+    private void flush(RegistryQueue queue, String revRegId, Batch batch) {
+        synchronized (queue) {
+            if (queue.open != batch) {
+                return;
+            }
+            queue.open = null;
+            if (batch.deltaJson == null) {
+                return;
+            }
+            // 앞 entry가 렛저에 올라간 뒤에 보내야 accumulator가 이어진다.
+            queue.published = queue.published.thenCompose(ignored -> publish(revRegId, batch, 0));
+        }
+    }
+
+    // batch가 기록되거나 거부될 때까지 보내고 waiter를 완료한다. 반환된 future는 항상 정상 완료된다.
+    private CompletableFuture<Void> publish(String revRegId, Batch batch, int round) {
+        return send(revRegId, batch.deltaJson, 1).handle((response, error) -> {
+            if (error == null) {
+                entries.incrementAndGet();
+                batch.waiters.forEach(waiter -> waiter.complete(response));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            Throwable cause = unwrap(error);
+            if (cause instanceof EntryRejectedException) {
+                batch.waiters.forEach(waiter -> waiter.completeExceptionally(cause));
+                return CompletableFuture.<Void>completedFuture(null);
+            }
+            // 다음 window는 이 delta의 accumulator에 이어지므로 건너뛰지 않고 같은 delta를 다시 보낸다.
+            long backoff = Math.min(SEND_RETRY_BACKOFF * MAX_SEND_ATTEMPTS << Math.min(round, 10), MAX_PUBLISH_RETRY_BACKOFF);
+            System.err.println("REVOC_REG_ENTRY 전송 실패, " + backoff + "ms 후 다시 보냄 (" + revRegId + "): " + cause);
+            return IndyFutures.delay(backoff).thenCompose(ignored -> publish(revRegId, batch, round + 1));
+        }).thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<String> send(String revRegId, String deltaJson, int attempt) {
+        return IndyUtil.sendRevocRegEntryAsync(ledger, issuerWallet, issuerDid, revRegId, deltaJson)
+                .thenApply(RevocationBatcher::checkReply)
+                .handle((response, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    if (attempt >= MAX_SEND_ATTEMPTS || unwrap(error) instanceof EntryRejectedException) {
+                        return IndyFutures.<String>failed(error);
+                    }
+                    return IndyFutures.delay(SEND_RETRY_BACKOFF * attempt).thenCompose(ignored -> send(revRegId, deltaJson, attempt + 1));
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private static String checkReply(String response) {
+        String op = LedgerResponse.op(response);
+        if ("REJECT".equals(op)) {
+            throw new EntryRejectedException("REVOC_REG_ENTRY 거부됨: " + response);
+        }
+        if (!"REPLY".equals(op)) {
+            throw new IllegalStateException("REVOC_REG_ENTRY 기록 실패 (" + op + "): " + response);
+        }
+        return response;
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
@@ -0,0 +1,212 @@
+package howto;
+
+import org.hyperledger.indy.sdk.IndyException;
+import org.hyperledger.indy.sdk.anoncreds.Anoncreds;
+import org.hyperledger.indy.sdk.anoncreds.AnoncredsResults;
+import org.hyperledger.indy.sdk.blob_storage.BlobStorageWriter;
+import org.hyperledger.indy.sdk.pool.Pool;
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import org.json.JSONObject;
+import utils.IndyFutures;
+import utils.TailsRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 발행자(issuer) 쪽 revocation registry 관리자.
+ * registry별로 사용한 인덱스 수를 세다가 rolloverThreshold 비율에 도달하면 다음 registry와 tails 파일을 백그라운드에서 만들고
+ * REVOC_REG_DEF와 초기 REVOC_REG_ENTRY를 미리 렛저에 올려 둔다. 현재 registry가 가득 차면 준비된 예비 registry로 바로 넘어가므로
+ * issuerCreateCredential이 registry 생성을 기다리지 않는다.
+ *
+ * 인덱스는 acquire 시점에 차감된다. 발행이 실패해도 돌려받지 않으므로 실제보다 조금 일찍 넘어갈 수는 있어도 넘치지는 않는다.
+ */
+public class RevocationRegistryManager {
+
+    public static class RegistrySlot {
+        private final String revRegId;
+        private final String revRegDefJson;
+        private final int tailsReaderHandle;
+
+        RegistrySlot(String revRegId, String revRegDefJson, int tailsReaderHandle) {
+            this.revRegId = revRegId;
+            this.revRegDefJson = revRegDefJson;
+            this.tailsReaderHandle = tailsReaderHandle;
+        }
+
+        public String getRevRegId() {
+            return revRegId;
+        }
+
+        public String getRevRegDefJson() {
+            return revRegDefJson;
+        }
+
+        public int getTailsReaderHandle() {
+            return tailsReaderHandle;
+        }
+    }
+
+    private static class Registry {
+        final String revRegId;
+        final String revRegDefJson;
+        final int tailsReaderHandle;
+        final AtomicInteger used = new AtomicInteger();
+
+        Registry(String revRegId, String revRegDefJson, int tailsReaderHandle) {
+            this.revRegId = revRegId;
+            this.revRegDefJson = revRegDefJson;
+            this.tailsReaderHandle = tailsReaderHandle;
+        }
+    }
+
+    private final Pool pool;
+    private final Wallet issuerWallet;
+    private final String issuerDid;
+    private final String credDefId;
+    private final String issuanceType;
+    private final int maxCredNum;
+    private final int rolloverAt;
+    private final String tailsBaseDir;
+    private final TailsRegistry tailsRegistry;
+    private final String tagPrefix = "R" + Long.toString(System.currentTimeMillis(), 36);
+    private final AtomicInteger generation = new AtomicInteger();
+    // registry 생성은 tails 파일 생성과 렛저 기록을 블로킹으로 기다리므로 libindy 콜백 스레드가 아닌 전용 스레드에서 한다.
+    private final ExecutorService creator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "revoc-reg-creator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Registry active;
+    private CompletableFuture<Registry> spare;
+    private int rollovers;
+
+    /**
+     * @param issuanceType      ISSUANCE_ON_DEMAND 또는 ISSUANCE_BY_DEFAULT
+     * @param maxCredNum        registry 하나가 담을 수 있는 최대 VC 수
+     * @param rolloverThreshold 0~1. 사용 비율이 이 값에 도달하면 예비 registry 준비를 시작한다.
+     */
+    public RevocationRegistryManager(Pool pool, Wallet issuerWallet, String issuerDid, String credDefId, String issuanceType,
+                                     int maxCredNum, double rolloverThreshold, String tailsBaseDir, TailsRegistry tailsRegistry) {
+        this.pool = pool;
+        this.issuerWallet = issuerWallet;
+        this.issuerDid = issuerDid;
+        this.credDefId = credDefId;
+        this.issuanceType = issuanceType;
+        this.maxCredNum = maxCredNum;
+        this.rolloverAt = Math.max(1, Math.min(maxCredNum, (int) Math.ceil(maxCredNum * rolloverThreshold)));
+        this.tailsBaseDir = tailsBaseDir.replace('\\', '/');
+        this.tailsRegistry = tailsRegistry;
+    }
+
+    /** 첫 registry를 만들어 렛저에 올린다. 호출하지 않으면 첫 acquire에서 만든다. */
+    public synchronized void warmUp() throws ExecutionException, InterruptedException {
+        if (active == null) {
+            active = nextRegistry();
+        }
+    }
+
+    /**
+     * VC 하나를 발행할 registry와 tails reader 핸들을 돌려준다.
+     * issuerCreateCredential(wallet, offer, request, values, slot.getRevRegId(), slot.getTailsReaderHandle())로 사용한다.
+     */
+    public synchronized RegistrySlot acquire() throws ExecutionException, InterruptedException {
+        if (active == null) {
+            active = nextRegistry();
+        }
+        if (active.used.get() >= maxCredNum) {
+            Registry full = active;
+            active = nextRegistry();
+            rollovers++;
+            // 가득 찬 registry는 폐기 때만 다시 읽으므로 매핑을 놓는다. 이미 나간 slot의 reader 핸들은 계속 유효하다.
+            tailsRegistry.release(full.revRegId);
+        }
+        int used = active.used.incrementAndGet();
+        if (used >= rolloverAt && spare != null && spare.isCompletedExceptionally()) {
+            // 실패한 예비를 그대로 두면 rollover 때 acquire 안에서 동기로 만들게 되므로 지금 백그라운드에서 다시 만든다.
+            spare.handle((registry, error) -> error).thenAccept(error ->
+                    System.err.println("예비 revocation registry 준비 실패, 다시 생성: " + error));
+            spare = null;
+        }
+        if (used >= rolloverAt && spare == null) {
+            spare = CompletableFuture.supplyAsync(this::createRegistryUnchecked, creator);
+        }
+        return new RegistrySlot(active.revRegId, active.revRegDefJson, active.tailsReaderHandle);
+    }
+
+    public synchronized String getActiveRevRegId() {
+        return active != null ? active.revRegId : null;
+    }
+
+    public synchronized int getActiveUsed() {
+        return active != null ? active.used.get() : 0;
+    }
+
+    public synchronized boolean isSpareReady() {
+        return spare != null && spare.isDone() && !spare.isCompletedExceptionally();
+    }
+
+    public synchronized int getRolloverCount() {
+        return rollovers;
+    }
+
+    public void shutdown() {
+        creator.shutdownNow();
+    }
+
+    // 예비 registry가 있으면 그것을(아직 준비 중이면 완료를 기다려) 쓰고, 없거나 준비에 실패했으면 지금 만든다.
+    private Registry nextRegistry() throws ExecutionException, InterruptedException {
+        CompletableFuture<Registry> prepared = spare;
+        spare = null;
+        if (prepared != null) {
+            try {
+                return IndyFutures.get(prepared);
+            } catch (ExecutionException e) {
+                System.err.println("예비 revocation registry 준비 실패, 다시 생성: " + e.getCause());
+            }
+        }
+        return createRegistry();
+    }
+
+    private Registry createRegistryUnchecked() {
+        try {
+            return createRegistry();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("revocation registry 생성 실패", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("revocation registry 생성 중단", e);
+        }
+    }
+
+    private Registry createRegistry() throws ExecutionException, InterruptedException {
+        String revRegDefConfig = new JSONObject()
+                .put("issuance_type", issuanceType)
+                .put("max_cred_num", maxCredNum)
+                .toString();
+        String tailsWriterConfig = new JSONObject()
+                .put("base_dir", tailsBaseDir)
+                .put("uri_pattern", "")
+                .toString();
+        String tag = tagPrefix + "-" + generation.incrementAndGet();
+
+        BlobStorageWriter tailsWriter = IndyFutures.get(IndyFutures.call(() -> BlobStorageWriter.openWriter("default", tailsWriterConfig)));
+        AnoncredsResults.IssuerCreateAndStoreRevocRegResult created = IndyFutures.get(IndyFutures.call(() ->
+                Anoncreds.issuerCreateAndStoreRevocReg(issuerWallet, issuerDid, "CL_ACCUM", tag, credDefId, revRegDefConfig, tailsWriter)));
+
+        try {
+            IndyUtil.sendRevocRegDef(pool, issuerWallet, issuerDid, created.getRevRegDefJson());
+            IndyUtil.sendRevocRegEntry(pool, issuerWallet, issuerDid, created.getRevRegId(), created.getRevRegEntryJson());
+        } catch (IndyException | IllegalStateException e) {
+            // 렛저에 올라가지 않은 registry를 발급에 쓰지 않도록 생성 자체를 실패시킨다. 예비 registry면 다음 acquire에서 다시 만든다.
+            throw new ExecutionException(e);
+        }
+
+        int tailsReaderHandle = tailsRegistry.getReaderHandle(created.getRevRegDefJson());
+        return new Registry(created.getRevRegId(), created.getRevRegDefJson(), tailsReaderHandle);
+    }
+}
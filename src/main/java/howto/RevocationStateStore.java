@@ -0,0 +1,115 @@
+package howto;
+
+import org.hyperledger.indy.sdk.anoncreds.Anoncreds;
+import org.hyperledger.indy.sdk.ledger.LedgerResults;
+import org.hyperledger.indy.sdk.pool.Pool;
+import utils.IndyFutures;
+import utils.LedgerSubmitter;
+import utils.TailsRegistry;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * prover가 credential별로 마지막으로 만든 revocation state와 그 timestamp를 보관한다.
+ * 다음 proof 때는 그 timestamp 이후의 delta만 렛저에서 가져와 Anoncreds.updateRevocationState로 상태를 앞으로 진행시키므로,
+ * 비용이 registry 전체 이력이 아니라 최근 발급/폐기 수에 비례한다.
+ * 처음 보는 credential이거나 저장된 시점보다 과거 시점을 요청하면 처음부터 createRevocationState로 만든다.
+ */
+public class RevocationStateStore {
+
+    public static class RevocationState {
+        private final String stateJson;
+        private final long timestamp;
+
+        RevocationState(String stateJson, long timestamp) {
+            this.stateJson = stateJson;
+            this.timestamp = timestamp;
+        }
+
+        public String getStateJson() {
+            return stateJson;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    private final LedgerSubmitter ledger;
+    private final String submitterDid;
+    private final TailsRegistry tailsRegistry;
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, RevocationState> states = new ConcurrentHashMap<>();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong updated = new AtomicLong();
+
+    public RevocationStateStore(Pool pool, String submitterDid, TailsRegistry tailsRegistry) {
+        this(LedgerSubmitter.of(pool), submitterDid, tailsRegistry);
+    }
+
+    public RevocationStateStore(LedgerSubmitter ledger, String submitterDid, TailsRegistry tailsRegistry) {
+        this.ledger = ledger;
+        this.submitterDid = submitterDid;
+        this.tailsRegistry = tailsRegistry;
+    }
+
+    /**
+     * to 시점(초) 기준 revocation state를 돌려준다. 반환된 timestamp를 requested credentials의 timestamp와
+     * proverCreateProof의 revocStates 키로 사용하면 된다.
+     */
+    public RevocationState getState(String revRegId, String credRevId, long to) throws ExecutionException, InterruptedException {
+        String key = revRegId + ":" + credRevId;
+        synchronized (locks.computeIfAbsent(key, k -> new Object())) {
+            String revRegDefJson = IndyFutures.get(IndyUtil.getRevocRegDefAsync(ledger, submitterDid, revRegId)).getObjectJson();
+            int tailsReaderHandle = tailsRegistry.getReaderHandle(revRegDefJson);
+
+            RevocationState last = states.get(key);
+            if (last != null && last.timestamp <= to) {
+                LedgerResults.ParseRegistryResponseResult delta =
+                        IndyFutures.get(IndyUtil.getRevocRegDeltaAsync(ledger, submitterDid, revRegId, last.timestamp, to));
+                if (delta.getTimestamp() == last.timestamp) {
+                    return last;
+                }
+                String stateJson = IndyFutures.get(IndyFutures.call(() -> Anoncreds.updateRevocationState(tailsReaderHandle,
+                        last.stateJson, revRegDefJson, delta.getObjectJson(), delta.getTimestamp(), credRevId)));
+                updated.incrementAndGet();
+                return store(key, new RevocationState(stateJson, delta.getTimestamp()));
+            }
+
+            LedgerResults.ParseRegistryResponseResult delta =
+                    IndyFutures.get(IndyUtil.getRevocRegDeltaAsync(ledger, submitterDid, revRegId, -1, to));
+            String stateJson = IndyFutures.get(IndyFutures.call(() -> Anoncreds.createRevocationState(tailsReaderHandle,
+                    revRegDefJson, delta.getObjectJson(), delta.getTimestamp(), credRevId)));
+            created.incrementAndGet();
+            RevocationState state = new RevocationState(stateJson, delta.getTimestamp());
+            // 과거 시점 조회는 저장된 최신 상태를 되돌리지 않는다.
+            return last == null ? store(key, state) : state;
+        }
+    }
+
+    /** credential을 지갑에서 지웠을 때 저장된 상태도 버린다. */
+    public void forget(String revRegId, String credRevId) {
+        String key = revRegId + ":" + credRevId;
+        states.remove(key);
+        locks.remove(key);
+    }
+
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    public long getUpdatedCount() {
+        return updated.get();
+    }
+
+    public int size() {
+        return states.size();
+    }
+
+    private RevocationState store(String key, RevocationState state) {
+        states.put(key, state);
+        return state;
+    }
+}
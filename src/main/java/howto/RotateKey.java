@@ -5,6 +5,8 @@ import org.hyperledger.indy.sdk.did.DidResults;
 import org.hyperledger.indy.sdk.pool.Pool;
 import org.hyperledger.indy.sdk.wallet.Wallet;
 import org.json.JSONObject;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
 import utils.PoolUtils;
 
 import static org.hyperledger.indy.sdk.ledger.Ledger.*;
@@ -68,6 +70,9 @@ public class RotateKey {
         String nymResponseJson = signAndSubmitRequest(pool, stewardWallet, defaultStewardDid, nymRequest).get();
         System.out.println("NYM transaction response:\n" + nymResponseJson);
 
+        //메시지를 보낼 때마다 원장을 조회하지 않도록 DID → verkey를 캐시한다. NYM 트랜잭션을 보면 캐시도 바뀐다.
+        VerkeyResolver verkeyResolver = new VerkeyResolver(LedgerSubmitter.of(pool), defaultStewardDid);
+        verkeyResolver.onNymWritten(nymRequest, nymResponseJson);
 
         /**
          * 스텝2. ** 지갑 및 원장에 인증키 변경 **
@@ -89,9 +94,14 @@ public class RotateKey {
         //업데이트 트랜잭션을 원장에 제출할 때 현재 서명키를 사용해 서명해야 한다.
         String nymUpdateResponse = signAndSubmitRequest(pool, govermentWallet, govermentDID, nymUpdateRequest).get();
         System.out.println("NYM response:\n" + nymUpdateResponse);
+        verkeyResolver.onNymWritten(nymUpdateRequest, nymUpdateResponse);
 
         System.out.println("\n12. Applying new Trust Anchor's Verkey in wallet\n");
-        Did.replaceKeysApply(govermentWallet, govermentDID);
+        //원장에 새 인증키가 반영된 것을 확인한 후에 지갑에 적용한다. 그 전까지 지갑은 기존 키로 서명한다.
+        String getNymForNewVerkey = buildGetNymRequest(govermentDID, govermentDID).get();
+        PoolUtils.ensurePreviousRequestApplied(pool, getNymForNewVerkey,
+                response -> newGovermentVerkey.equals(LedgerResponse.field(LedgerResponse.data(response), "verkey")));
+        Did.replaceKeysApply(govermentWallet, govermentDID).get();
 
         /**
          * 스텝3 ** DID document에 serviceEndpoint 추가 **
@@ -124,9 +134,10 @@ public class RotateKey {
         System.out.println("\n16. Comparing Trust Anchor verkeys\n");
         System.out.println("Written by Steward: " + govermentDID);
         System.out.println("Current from wallet: " + trustAnchorVerkeyFromWallet);
-        String responseData = new JSONObject(getNymResponse).getJSONObject("result").getString("data");
-        String trustAnchorVerkeyFromLedger = new JSONObject(responseData).getString("verkey");
+        String responseData = LedgerResponse.data(getNymResponse);
+        String trustAnchorVerkeyFromLedger = LedgerResponse.field(responseData, "verkey");
         System.out.println("Current from ledger: " + trustAnchorVerkeyFromLedger);
+        System.out.println("Current from resolver: " + verkeyResolver.resolve(govermentDID));
         boolean match = !govermentDID.equals(trustAnchorVerkeyFromWallet) && trustAnchorVerkeyFromWallet.equals(trustAnchorVerkeyFromLedger);
         System.out.println("Matching: " + match);
 
@@ -5,6 +5,8 @@ import org.hyperledger.indy.sdk.did.DidResults;
 import org.hyperledger.indy.sdk.pool.Pool;
 import org.hyperledger.indy.sdk.wallet.Wallet;
 import org.json.JSONObject;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
 import utils.PoolUtils;
 
 import static org.hyperledger.indy.sdk.ledger.Ledger.*;
@@ -94,7 +96,11 @@ public class UpdateDIDdocument {
         System.out.println("NYM response:\n" + nymUpdateResponse);
 
         System.out.println("\n12. Applying new Trust Anchor's Verkey in wallet\n");
-        Did.replaceKeysApply(govermentWallet, govermentDID);
+        //원장에 새 인증키가 반영된 것을 확인한 후에 지갑에 적용한다. 그 전까지 지갑은 기존 키로 서명한다.
+        String getNymForNewVerkey = buildGetNymRequest(govermentDID, govermentDID).get();
+        PoolUtils.ensurePreviousRequestApplied(pool, getNymForNewVerkey,
+                response -> newGovermentVerkey.equals(LedgerResponse.field(LedgerResponse.data(response), "verkey")));
+        Did.replaceKeysApply(govermentWallet, govermentDID).get();
 
         /**
          * 스텝3 ** DID document에 serviceEndpoint 추가 **
@@ -129,8 +135,8 @@ public class UpdateDIDdocument {
         System.out.println("\n19. Comparing Trust Anchor verkeys\n");
         System.out.println("Written by Steward: " + govermentDID);
         System.out.println("Current from wallet: " + govermentVerkeyFromWallet);
-        String responseData = new JSONObject(getNymResponse).getJSONObject("result").getString("data");
-        String govermentVerkeyFromLedger = new JSONObject(responseData).getString("verkey");
+        String responseData = LedgerResponse.data(getNymResponse);
+        String govermentVerkeyFromLedger = LedgerResponse.field(responseData, "verkey");
         System.out.println("Current from ledger: " + govermentVerkeyFromLedger);
         boolean match = !govermentDID.equals(govermentVerkeyFromWallet) && govermentVerkeyFromWallet.equals(govermentVerkeyFromLedger);
         System.out.println("Matching: " + match);
@@ -153,14 +159,21 @@ public class UpdateDIDdocument {
         System.out.println("GET_ATTRIB response:\n" + getAttribResponse);
 
         System.out.println("\n23. Comparing Trust Anchor endpoint\n");
-        String responseData2 = new JSONObject(getAttribResponse).getJSONObject("result").getString("raw");
-        String serviceEndpointFromLedger = new JSONObject(responseData2).getJSONObject("service").getString("serviceEndpoint");
+        String responseData2 = LedgerResponse.field(getAttribResponse, "result", "raw");
+        String serviceEndpointFromLedger = LedgerResponse.field(responseData2, "service", "serviceEndpoint");
         System.out.println("serviceEndpoint From Ledger : " + serviceEndpointFromLedger);
         System.out.println("serviceEndpoint From Wallet : " + serviceEndpointFromwallet.getAddress());
         boolean endpointMatch = serviceEndpointFromLedger.equals(serviceEndpointFromwallet.getAddress())
                 && serviceEndpointFromwallet.getTransportKey().equals(newGovermentVerkey);
         System.out.println("endpoint Matching: " + endpointMatch);
 
+        System.out.println("\n23-1. Resolving DID document (GET_NYM and GET_ATTRIB at once)\n");
+        DidDocumentResolver didDocumentResolver = new DidDocumentResolver(LedgerSubmitter.of(pool), govermentDID);
+        DidDocumentResolver.DidDocument didDocument = didDocumentResolver.resolve(govermentDID);
+        System.out.println("DID document:\n" + didDocument.toJson());
+        System.out.println("DID document Matching: " + (newGovermentVerkey.equals(didDocument.getVerkey())
+                && serviceEndpointFromLedger.equals(didDocument.getServiceEndpoint())));
+
         /**
          * 스텝6. clean up code
          * 1)만든 지갑들 닫고 삭제.
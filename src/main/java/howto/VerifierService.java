@@ -0,0 +1,223 @@
+package howto;
+
+import org.hyperledger.indy.sdk.anoncreds.Anoncreds;
+import org.hyperledger.indy.sdk.pool.Pool;
+import utils.IndyFutures;
+import utils.LatencyHistogram;
+import utils.LedgerSubmitter;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * (proof request, proof) 쌍을 대량으로 검증한다.
+ * 렛저 객체는 ProofLedgerResolver(IndyUtil의 공유 캐시)로 가져오고 verifierVerifyProof를 블로킹 없이 이어서 실행한다.
+ * 동시에 진행되는 검증 수는 maxInFlight(기본: CPU 수 x 4)로 제한해 모든 코어를 쓰면서도 메모리가 무한히 늘지 않게 한다.
+ * 처리량, 지연시간 분포, 실패 원인별 건수를 집계한다.
+ */
+public class VerifierService {
+
+    public static class Presentation {
+        private final String proofRequestJson;
+        private final String proofJson;
+
+        public Presentation(String proofRequestJson, String proofJson) {
+            this.proofRequestJson = proofRequestJson;
+            this.proofJson = proofJson;
+        }
+
+        public String getProofRequestJson() {
+            return proofRequestJson;
+        }
+
+        public String getProofJson() {
+            return proofJson;
+        }
+    }
+
+    public static class VerificationResult {
+        private final Presentation presentation;
+        private final boolean valid;
+        private final Throwable error;
+        private final long latencyNanos;
+
+        VerificationResult(Presentation presentation, boolean valid, Throwable error, long latencyNanos) {
+            this.presentation = presentation;
+            this.valid = valid;
+            this.error = error;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public Presentation getPresentation() {
+            return presentation;
+        }
+
+        /** 검증이 끝났고 proof가 유효하면 true. 검증 자체가 실패했으면 false이고 getError()에 원인이 있다. */
+        public boolean isValid() {
+            return valid;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public long getLatencyNanos() {
+            return latencyNanos;
+        }
+    }
+
+    private static final String INVALID_PROOF = "InvalidProof";
+
+    private final ProofLedgerResolver resolver;
+    private final Semaphore window;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong valid = new AtomicLong();
+    private final AtomicLong invalid = new AtomicLong();
+    private final ConcurrentHashMap<String, AtomicLong> failures = new ConcurrentHashMap<>();
+    private volatile long statsSince = System.nanoTime();
+
+    public VerifierService(Pool pool, String verifierDid) {
+        this(LedgerSubmitter.of(pool), verifierDid, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    public VerifierService(LedgerSubmitter ledger, String verifierDid, int maxInFlight) {
+        this.resolver = new ProofLedgerResolver(ledger, verifierDid);
+        this.window = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * 모든 presentation을 검증하고 결과를 끝나는 순서대로 consumer에 넘긴다. 모든 결과를 넘긴 뒤에 반환한다.
+     * 결과를 모아 두지 않으므로 입력이 아무리 많아도 메모리에는 진행중인 검증만 남는다. 필요하면 consumer에서 모은다.
+     * consumer는 libindy 콜백 스레드에서 한번에 하나씩 호출되며, consumer가 던진 첫 예외는 모든 검증이 끝난 뒤 다시 던진다.
+     */
+    public void verifyAll(Stream<Presentation> presentations, Consumer<VerificationResult> consumer) throws InterruptedException {
+        Phaser inFlight = new Phaser(1);
+        AtomicReference<RuntimeException> consumerFailure = new AtomicReference<>();
+        Iterator<Presentation> iterator = presentations.iterator();
+        while (iterator.hasNext()) {
+            inFlight.register();
+            verify(iterator.next()).thenAccept(result -> {
+                try {
+                    synchronized (consumer) {
+                        consumer.accept(result);
+                    }
+                } catch (RuntimeException e) {
+                    consumerFailure.compareAndSet(null, e);
+                } finally {
+                    inFlight.arriveAndDeregister();
+                }
+            });
+        }
+        inFlight.awaitAdvanceInterruptibly(inFlight.arrive());
+        if (consumerFailure.get() != null) {
+            throw consumerFailure.get();
+        }
+    }
+
+    /**
+     * presentation 하나를 검증 파이프라인에 넣는다. 진행중인 검증이 maxInFlight개이면 자리가 날 때까지 대기한다.
+     * 반환된 future는 실패시에도 예외 없이 VerificationResult로 완료된다.
+     */
+    public CompletableFuture<VerificationResult> verify(Presentation presentation) throws InterruptedException {
+        window.acquire();
+        long start = System.nanoTime();
+        CompletableFuture<VerificationResult> result = new CompletableFuture<>();
+        // resolveAsync가 바로 던지는 예외(잘못된 proof JSON 등)도 실패 결과로 만들어 permit이 반환되도록 체인 안에서 호출한다.
+        CompletableFuture.completedFuture(presentation.proofJson)
+                .thenCompose(resolver::resolveAsync)
+                .thenCompose(IndyFutures.compose(inputs -> Anoncreds.verifierVerifyProof(presentation.proofRequestJson, presentation.proofJson,
+                        inputs.getSchemasJson(), inputs.getCredentialDefsJson(), inputs.getRevocRegDefsJson(), inputs.getRevocRegsJson())))
+                .whenComplete((verified, error) -> {
+                    try {
+                        long elapsed = System.nanoTime() - start;
+                        latency.record(elapsed);
+                        if (error != null) {
+                            Throwable cause = unwrap(error);
+                            countFailure(cause.getClass().getSimpleName());
+                            result.complete(new VerificationResult(presentation, false, cause, elapsed));
+                        } else if (Boolean.TRUE.equals(verified)) {
+                            valid.incrementAndGet();
+                            result.complete(new VerificationResult(presentation, true, null, elapsed));
+                        } else {
+                            invalid.incrementAndGet();
+                            countFailure(INVALID_PROOF);
+                            result.complete(new VerificationResult(presentation, false, null, elapsed));
+                        }
+                    } catch (RuntimeException e) {
+                        result.complete(new VerificationResult(presentation, false, e, System.nanoTime() - start));
+                    }
+                });
+        return result.whenComplete((verificationResult, error) -> window.release());
+    }
+
+    public boolean verifySync(String proofRequestJson, String proofJson) throws ExecutionException, InterruptedException {
+        VerificationResult result = IndyFutures.get(verify(new Presentation(proofRequestJson, proofJson)));
+        if (result.error != null) {
+            throw new ExecutionException(result.error);
+        }
+        return result.valid;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getValidCount() {
+        return valid.get();
+    }
+
+    public long getInvalidCount() {
+        return invalid.get();
+    }
+
+    /** 실패 원인(예외 클래스 이름, 유효하지 않은 proof는 InvalidProof) → 건수 */
+    public Map<String, Long> getFailureReasons() {
+        Map<String, Long> reasons = new TreeMap<>();
+        failures.forEach((reason, count) -> reasons.put(reason, count.get()));
+        return reasons;
+    }
+
+    /** 마지막 resetStats 이후 초당 검증 건수 */
+    public double getThroughput() {
+        double seconds = (System.nanoTime() - statsSince) / 1_000_000_000.0;
+        return seconds <= 0 ? 0 : latency.getCount() / seconds;
+    }
+
+    public void resetStats() {
+        latency.reset();
+        valid.set(0);
+        invalid.set(0);
+        failures.clear();
+        statsSince = System.nanoTime();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VerifierService{throughput=%.1f/s, valid=%d, invalid=%d, p50=%dus, p99=%dus, failures=%s}",
+                getThroughput(), getValidCount(), getInvalidCount(),
+                latency.getPercentileMicros(50), latency.getPercentileMicros(99), getFailureReasons());
+    }
+
+    private void countFailure(String reason) {
+        failures.computeIfAbsent(reason, key -> new AtomicLong()).incrementAndGet();
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
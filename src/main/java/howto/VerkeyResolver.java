@@ -0,0 +1,319 @@
+package howto;
+
+import org.hyperledger.indy.sdk.ledger.Ledger;
+import utils.IndyFutures;
+import utils.IndyMetrics;
+import utils.LedgerResponse;
+import utils.LedgerSubmitter;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * DID → verkey 조회 캐시. keyForDid처럼 GET_NYM으로 렛저에서 verkey를 가져오지만 결과를 메모리에 보관한다.
+ *
+ * - refreshAfterMillis가 지난 항목은 기존 verkey를 바로 돌려주고 백그라운드에서 GET_NYM을 다시 보내 갱신한다.
+ *   처음 보는 DID가 아니면 메시지 암호화가 렛저 응답을 기다리지 않는다.
+ * - NYM 트랜잭션으로 verkey가 바뀐 것을 보면(RotateKey의 replaceKeys 후 NYM 업데이트) 캐시를 새 verkey로 바꾼다.
+ *   observing(ledger)로 감싼 LedgerSubmitter를 통하면 자동으로, Ledger.signAndSubmitRequest를 직접 쓰면 onNymWritten으로 알려준다.
+ * - 축약 verkey(~로 시작)는 DID와 합쳐 전체 verkey로 바꿔서 저장한다.
+ */
+public class VerkeyResolver {
+
+    private static final String BASE58_ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz";
+    private static final BigInteger BASE = BigInteger.valueOf(58);
+
+    private static class Entry {
+        volatile String verkey;
+        volatile long resolvedAt;
+        // put/onNymWritten마다 증가. 조회중에 값이 바뀌었는지 확인한다.
+        long version;
+        // 진행중인 조회. 없으면 null
+        CompletableFuture<String> loading;
+    }
+
+    private final LedgerSubmitter ledger;
+    private final String submitterDid;
+    private final long refreshAfterMillis;
+    // 접근 순서 LinkedHashMap. maxEntries를 넘으면 가장 오래 사용되지 않은 DID를 put 시점에 바로 지운다. entries로 동기화한다.
+    private final Map<String, Entry> entries;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong rotations = new AtomicLong();
+
+    public VerkeyResolver(LedgerSubmitter ledger, String submitterDid) {
+        this(ledger, submitterDid, 5 * 60 * 1000, 100_000);
+    }
+
+    /**
+     * @param submitterDid       GET_NYM 요청자 DID. null이면 libindy가 임의로 채운다.
+     * @param refreshAfterMillis 이 시간이 지난 항목은 다음 조회 때 백그라운드에서 갱신한다.
+     * @param maxEntries         넘으면 가장 오래 사용되지 않은 DID부터 제거한다.
+     */
+    public VerkeyResolver(LedgerSubmitter ledger, String submitterDid, long refreshAfterMillis, int maxEntries) {
+        this.ledger = ledger;
+        this.submitterDid = submitterDid;
+        this.refreshAfterMillis = refreshAfterMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VerkeyResolver.Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public String resolve(String did) throws ExecutionException, InterruptedException {
+        return IndyFutures.get(resolveAsync(did));
+    }
+
+    /**
+     * 캐시에 verkey가 있으면 이미 완료된 future를 돌려준다. 오래된 항목이면 갱신을 시작만 하고 기다리지 않는다.
+     * 처음 보는 DID면 GET_NYM 응답을 기다린다. DID가 렛저에 없으면 IllegalStateException으로 실패한다.
+     */
+    public CompletableFuture<String> resolveAsync(String did) {
+        Entry entry = entry(did);
+        String verkey = entry.verkey;
+        if (verkey == null) {
+            misses.incrementAndGet();
+            return load(did, entry);
+        }
+        hits.incrementAndGet();
+        if (System.currentTimeMillis() - entry.resolvedAt >= refreshAfterMillis) {
+            load(did, entry);
+        }
+        return CompletableFuture.completedFuture(verkey);
+    }
+
+    /** 다음 메시지 전에 미리 조회해 둔다. */
+    public void prefetch(Iterable<String> dids) {
+        for (String did : dids) {
+            resolveAsync(did);
+        }
+    }
+
+    /** 지갑이나 connection 응답처럼 렛저 밖에서 확인된 verkey를 넣는다. */
+    public void put(String did, String verkey) {
+        String expanded = expand(did, verkey);
+        Entry entry = entry(did);
+        synchronized (entry) {
+            entry.verkey = expanded;
+            entry.resolvedAt = System.currentTimeMillis();
+            entry.version++;
+        }
+    }
+
+    /**
+     * NYM 요청이 렛저에 적용되었을 때 호출한다. 요청에 verkey가 있으면 dest DID의 캐시를 새 verkey로 바꾼다.
+     * role만 바꾸는 NYM이나 REPLY가 아닌 응답은 무시한다.
+     */
+    public void onNymWritten(String nymRequestJson, String nymResponseJson) {
+        if (!"NYM".equals(IndyMetrics.txnName(nymRequestJson)) || !"REPLY".equals(LedgerResponse.op(nymResponseJson))) {
+            return;
+        }
+        String dest = LedgerResponse.field(nymRequestJson, "operation", "dest");
+        String verkey = LedgerResponse.field(nymRequestJson, "operation", "verkey");
+        if (dest == null || verkey == null) {
+            return;
+        }
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(dest);
+        }
+        if (entry != null && !expand(dest, verkey).equals(entry.verkey)) {
+            rotations.incrementAndGet();
+        }
+        put(dest, verkey);
+    }
+
+    /** ledger로 보내는 모든 NYM 트랜잭션을 보고 캐시를 갱신하는 LedgerSubmitter */
+    public LedgerSubmitter observing(LedgerSubmitter ledger) {
+        return requestJson -> ledger.submitRequest(requestJson).thenApply(response -> {
+            onNymWritten(requestJson, response);
+            return response;
+        });
+    }
+
+    public void invalidate(String did) {
+        synchronized (entries) {
+            entries.remove(did);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    public long getRefreshFailureCount() {
+        return refreshFailures.get();
+    }
+
+    /** onNymWritten으로 관찰한 verkey 변경 횟수 */
+    public long getRotationCount() {
+        return rotations.get();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "VerkeyResolver{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", refreshes=" + getRefreshCount() + ", refreshFailures=" + getRefreshFailureCount()
+                + ", rotations=" + getRotationCount() + "}";
+    }
+
+    // 같은 DID에 대한 조회는 하나만 진행한다.
+    private CompletableFuture<String> load(String did, Entry entry) {
+        CompletableFuture<String> loading;
+        long version;
+        boolean refresh;
+        synchronized (entry) {
+            if (entry.loading != null) {
+                return entry.loading;
+            }
+            loading = new CompletableFuture<>();
+            entry.loading = loading;
+            version = entry.version;
+            refresh = entry.verkey != null;
+        }
+        if (refresh) {
+            refreshes.incrementAndGet();
+        }
+
+        IndyMetrics.call("buildGetNymRequest", () -> Ledger.buildGetNymRequest(submitterDid, did))
+                .thenCompose(ledger::submitRequest)
+                .whenComplete((response, error) -> {
+                    String verkey = null;
+                    Throwable failure = error;
+                    if (failure == null) {
+                        try {
+                            verkey = verkeyFromResponse(did, response);
+                        } catch (RuntimeException e) {
+                            failure = e;
+                        }
+                    }
+                    String current;
+                    synchronized (entry) {
+                        entry.loading = null;
+                        // 조회중에 onNymWritten으로 더 새로운 verkey가 들어왔으면 덮어쓰지 않는다.
+                        if (failure == null && entry.version == version) {
+                            entry.verkey = verkey;
+                            entry.resolvedAt = System.currentTimeMillis();
+                        }
+                        current = entry.verkey;
+                    }
+                    if (failure == null || current != null) {
+                        if (failure != null) {
+                            // 갱신 실패시에는 기존 verkey를 계속 쓰고 다음 조회 때 다시 시도한다.
+                            refreshFailures.incrementAndGet();
+                        }
+                        loading.complete(current);
+                    } else {
+                        synchronized (entries) {
+                            entries.remove(did, entry);
+                        }
+                        loading.completeExceptionally(failure);
+                    }
+                });
+        return loading;
+    }
+
+    private static String verkeyFromResponse(String did, String getNymResponse) {
+        if (!"REPLY".equals(LedgerResponse.op(getNymResponse))) {
+            throw new IllegalStateException("GET_NYM 실패: " + getNymResponse);
+        }
+        String data = LedgerResponse.data(getNymResponse);
+        String verkey = data == null ? null : LedgerResponse.field(data, "verkey");
+        if (verkey == null) {
+            throw new IllegalStateException("렛저에 DID가 없거나 verkey가 없음: " + did);
+        }
+        return expand(did, verkey);
+    }
+
+    // 조회하거나 새로 넣어서 접근 순서의 맨 뒤로 보낸다.
+    private Entry entry(String did) {
+        synchronized (entries) {
+            Entry entry = entries.get(did);
+            if (entry == null) {
+                entry = new Entry();
+                entries.put(did, entry);
+            }
+            return entry;
+        }
+    }
+
+    /** 축약 verkey(~ + 뒤 16바이트)를 DID(앞 16바이트)와 합쳐 전체 verkey로 바꾼다. 전체 verkey는 그대로 돌려준다. */
+    static String expand(String did, String verkey) {
+        if (!verkey.startsWith("~")) {
+            return verkey;
+        }
+        String unqualifiedDid = did.substring(did.lastIndexOf(':') + 1);
+        byte[] head = base58Decode(unqualifiedDid);
+        byte[] tail = base58Decode(verkey.substring(1));
+        byte[] full = Arrays.copyOf(head, head.length + tail.length);
+        System.arraycopy(tail, 0, full, head.length, tail.length);
+        return base58Encode(full);
+    }
+
+    private static byte[] base58Decode(String value) {
+        BigInteger number = BigInteger.ZERO;
+        for (int i = 0; i < value.length(); i++) {
+            int digit = BASE58_ALPHABET.indexOf(value.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("base58 문자가 아님: " + value);
+            }
+            number = number.multiply(BASE).add(BigInteger.valueOf(digit));
+        }
+        int leadingZeros = 0;
+        while (leadingZeros < value.length() && value.charAt(leadingZeros) == '1') {
+            leadingZeros++;
+        }
+        byte[] bytes = number.toByteArray();
+        // BigInteger의 부호 바이트 제거
+        int start = bytes.length > 1 && bytes[0] == 0 ? 1 : 0;
+        if (number.signum() == 0) {
+            start = bytes.length;
+        }
+        byte[] decoded = new byte[leadingZeros + bytes.length - start];
+        System.arraycopy(bytes, start, decoded, leadingZeros, bytes.length - start);
+        return decoded;
+    }
+
+    private static String base58Encode(byte[] bytes) {
+        StringBuilder encoded = new StringBuilder();
+        BigInteger number = new BigInteger(1, bytes);
+        while (number.signum() > 0) {
+            BigInteger[] divided = number.divideAndRemainder(BASE);
+            encoded.append(BASE58_ALPHABET.charAt(divided[1].intValue()));
+            number = divided[0];
+        }
+        for (int i = 0; i < bytes.length && bytes[i] == 0; i++) {
+            encoded.append('1');
+        }
+        return encoded.reverse().toString();
+    }
+}
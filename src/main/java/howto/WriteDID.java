@@ -6,6 +6,7 @@ import org.hyperledger.indy.sdk.did.DidResults;
 import org.hyperledger.indy.sdk.pool.Pool;
 import org.hyperledger.indy.sdk.wallet.Wallet;
 import org.json.JSONObject;
+import utils.LedgerResponse;
 import utils.PoolUtils;
 
 import java.util.concurrent.ExecutionException;
@@ -120,8 +121,8 @@ public class WriteDID {
         System.out.println("GET_NYM response json:\n" + getNymResponse);
 
         System.out.println("\nComparing Trust Anchor Verkey as written by Steward and as retrieved in Client's query\n");
-        String responseData = new JSONObject(getNymResponse).getJSONObject("result").getString("data");
-        String trustAnchorVerkeyFromLedger = new JSONObject(responseData).getString("verkey");
+        String responseData = LedgerResponse.data(getNymResponse);
+        String trustAnchorVerkeyFromLedger = LedgerResponse.field(responseData, "verkey");
         System.out.println("Written by Steward: " + govermentVerkey);
         System.out.println("Queried from Ledger: " + trustAnchorVerkeyFromLedger);
         System.out.println("Matching: " + govermentVerkey.equals(trustAnchorVerkeyFromLedger));
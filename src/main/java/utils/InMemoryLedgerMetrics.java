@@ -0,0 +1,125 @@
+package utils;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * operation별 지연시간 히스토그램, in-flight 게이지, 실패/재시도 횟수, 응답 크기를 메모리에 집계하는 기본 LedgerMetrics.
+ * dump()로 사람이 읽을 수 있는 표를 얻을 수 있다.
+ */
+public class InMemoryLedgerMetrics implements LedgerMetrics {
+
+	public static class OperationStats {
+		private final LatencyHistogram latency = new LatencyHistogram();
+		private final AtomicLong inFlight = new AtomicLong();
+		private final AtomicLong maxInFlight = new AtomicLong();
+		private final AtomicLong failures = new AtomicLong();
+		private final AtomicLong retries = new AtomicLong();
+		private final AtomicLong responses = new AtomicLong();
+		private final AtomicLong responseBytes = new AtomicLong();
+		private final AtomicLong maxResponseBytes = new AtomicLong();
+
+		public LatencyHistogram getLatency() {
+			return latency;
+		}
+
+		public long getInFlight() {
+			return inFlight.get();
+		}
+
+		public long getMaxInFlight() {
+			return maxInFlight.get();
+		}
+
+		public long getFailures() {
+			return failures.get();
+		}
+
+		public long getRetries() {
+			return retries.get();
+		}
+
+		public double getMeanResponseBytes() {
+			long n = responses.get();
+			return n == 0 ? 0 : (double) responseBytes.get() / n;
+		}
+
+		public long getMaxResponseBytes() {
+			return maxResponseBytes.get();
+		}
+	}
+
+	private final ConcurrentHashMap<String, OperationStats> operations = new ConcurrentHashMap<>();
+
+	@Override
+	public void started(String operation) {
+		OperationStats stats = stats(operation);
+		updateMax(stats.maxInFlight, stats.inFlight.incrementAndGet());
+	}
+
+	@Override
+	public void completed(String operation, long nanos, int responseBytes, boolean success) {
+		OperationStats stats = stats(operation);
+		stats.inFlight.decrementAndGet();
+		stats.latency.record(nanos);
+		if (!success) {
+			stats.failures.incrementAndGet();
+		}
+		if (responseBytes >= 0) {
+			stats.responses.incrementAndGet();
+			stats.responseBytes.addAndGet(responseBytes);
+			updateMax(stats.maxResponseBytes, responseBytes);
+		}
+	}
+
+	@Override
+	public void retried(String operation) {
+		stats(operation).retries.incrementAndGet();
+	}
+
+	/** operation 이름 순으로 정렬된 스냅샷 */
+	public Map<String, OperationStats> getOperations() {
+		return new TreeMap<>(operations);
+	}
+
+	public OperationStats get(String operation) {
+		return operations.get(operation);
+	}
+
+	public void reset() {
+		operations.clear();
+	}
+
+	public String dump() {
+		StringBuilder out = new StringBuilder(String.format("%-40s %8s %8s %8s %8s %8s %10s %6s %6s %6s %10s%n",
+				"operation", "count", "p50(us)", "p90(us)", "p99(us)", "max(us)", "inflight", "fail", "retry", "maxInF", "avgBytes"));
+		for (Map.Entry<String, OperationStats> entry : getOperations().entrySet()) {
+			OperationStats stats = entry.getValue();
+			LatencyHistogram latency = stats.latency;
+			out.append(String.format("%-40s %8d %8d %8d %8d %8d %10d %6d %6d %6d %10.0f%n",
+					entry.getKey(), latency.getCount(), latency.getPercentileMicros(50), latency.getPercentileMicros(90),
+					latency.getPercentileMicros(99), latency.getMaxMicros(), stats.getInFlight(), stats.getFailures(),
+					stats.getRetries(), stats.getMaxInFlight(), stats.getMeanResponseBytes()));
+		}
+		return out.toString();
+	}
+
+	@Override
+	public String toString() {
+		return dump();
+	}
+
+	private OperationStats stats(String operation) {
+		OperationStats stats = operations.get(operation);
+		return stats != null ? stats : operations.computeIfAbsent(operation, key -> new OperationStats());
+	}
+
+	private static void updateMax(AtomicLong max, long value) {
+		long current;
+		while (value > (current = max.get()) && !max.compareAndSet(current, value)) {
+			// 다른 스레드가 먼저 갱신했으면 다시 비교
+		}
+	}
+}
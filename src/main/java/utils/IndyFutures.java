@@ -0,0 +1,76 @@
+package utils;
+
+import org.hyperledger.indy.sdk.IndyException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * libindy 래퍼의 메소드는 CompletableFuture를 반환하면서도 IndyException을 던지기 때문에
+ * thenCompose 체인에 바로 넣을 수 없다. 이를 연결하기 위한 도우미 모음.
+ */
+public class IndyFutures {
+
+	// 재시도 대기는 스레드를 잡아두지 않고 이 스케줄러에 예약만 한다. 이어지는 처리는 libindy 콜백 스레드에서 실행된다.
+	private static final ScheduledExecutorService SCHEDULER = Executors.newScheduledThreadPool(2, runnable -> {
+		Thread thread = new Thread(runnable, "indy-scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public interface IndyCall<R> {
+		CompletableFuture<R> call() throws IndyException;
+	}
+
+	public interface IndyFunction<T, R> {
+		CompletableFuture<R> apply(T t) throws IndyException;
+	}
+
+	public static <R> CompletableFuture<R> call(IndyCall<R> call) {
+		try {
+			return call.call();
+		} catch (IndyException | RuntimeException e) {
+			return failed(e);
+		}
+	}
+
+	public static <T, R> Function<T, CompletableFuture<R>> compose(IndyFunction<T, R> function) {
+		return t -> {
+			try {
+				return function.apply(t);
+			} catch (IndyException | RuntimeException e) {
+				return failed(e);
+			}
+		};
+	}
+
+	public static <R> CompletableFuture<R> failed(Throwable error) {
+		CompletableFuture<R> future = new CompletableFuture<>();
+		future.completeExceptionally(error);
+		return future;
+	}
+
+	public static CompletableFuture<Void> delay(long millis) {
+		CompletableFuture<Void> future = new CompletableFuture<>();
+		SCHEDULER.schedule(() -> future.complete(null), millis, TimeUnit.MILLISECONDS);
+		return future;
+	}
+
+	/**
+	 * future.get()과 같지만 원인이 RuntimeException(예: 렛저 미적용시의 IllegalStateException)이면 감싸지 않고 그대로 던진다.
+	 */
+	public static <R> R get(CompletableFuture<R> future) throws ExecutionException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
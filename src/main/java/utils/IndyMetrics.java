@@ -0,0 +1,94 @@
+package utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * 렛저 호출을 계측하는 도우미. IndyFutures.call/compose 대신 operation 이름과 함께 호출하면
+ * 시작/종료 시각, 성공 여부, 응답 크기가 현재 LedgerMetrics(기본: InMemoryLedgerMetrics)에 기록된다.
+ */
+public class IndyMetrics {
+
+	private static final Map<String, String> TXN_NAMES = new HashMap<>();
+
+	static {
+		TXN_NAMES.put("1", "NYM");
+		TXN_NAMES.put("3", "GET_TXN");
+		TXN_NAMES.put("100", "ATTRIB");
+		TXN_NAMES.put("101", "SCHEMA");
+		TXN_NAMES.put("102", "CLAIM_DEF");
+		TXN_NAMES.put("104", "GET_ATTR");
+		TXN_NAMES.put("105", "GET_NYM");
+		TXN_NAMES.put("107", "GET_SCHEMA");
+		TXN_NAMES.put("108", "GET_CLAIM_DEF");
+		TXN_NAMES.put("113", "REVOC_REG_DEF");
+		TXN_NAMES.put("114", "REVOC_REG_ENTRY");
+		TXN_NAMES.put("115", "GET_REVOC_REG_DEF");
+		TXN_NAMES.put("116", "GET_REVOC_REG");
+		TXN_NAMES.put("117", "GET_REVOC_REG_DELTA");
+	}
+
+	private static volatile LedgerMetrics metrics = new InMemoryLedgerMetrics();
+
+	public static LedgerMetrics get() {
+		return metrics;
+	}
+
+	public static void set(LedgerMetrics ledgerMetrics) {
+		metrics = ledgerMetrics;
+	}
+
+	/** 현재 LedgerMetrics가 InMemoryLedgerMetrics면 그 표를, 아니면 빈 문자열을 돌려준다. */
+	public static String dump() {
+		LedgerMetrics current = metrics;
+		return current instanceof InMemoryLedgerMetrics ? ((InMemoryLedgerMetrics) current).dump() : "";
+	}
+
+	public static <R> CompletableFuture<R> call(String operation, IndyFutures.IndyCall<R> call) {
+		LedgerMetrics current = metrics;
+		current.started(operation);
+		return record(current, operation, System.nanoTime(), IndyFutures.call(call));
+	}
+
+	public static <T, R> Function<T, CompletableFuture<R>> compose(String operation, IndyFutures.IndyFunction<T, R> function) {
+		Function<T, CompletableFuture<R>> composed = IndyFutures.compose(function);
+		return t -> {
+			LedgerMetrics current = metrics;
+			current.started(operation);
+			return record(current, operation, System.nanoTime(), composed.apply(t));
+		};
+	}
+
+	/** 이미 시작된 future의 완료까지를 operation으로 기록한다. */
+	public static <R> CompletableFuture<R> track(String operation, CompletableFuture<R> future) {
+		LedgerMetrics current = metrics;
+		current.started(operation);
+		return record(current, operation, System.nanoTime(), future);
+	}
+
+	public static void retried(String operation) {
+		metrics.retried(operation);
+	}
+
+	/** 서명 전/후 request JSON의 operation.type을 트랜잭션 이름(GET_NYM 등)으로 바꾼다. 알 수 없으면 type 코드 그대로 */
+	public static String txnName(String requestJson) {
+		String type;
+		try {
+			type = LedgerResponse.field(requestJson, "operation", "type");
+		} catch (RuntimeException e) {
+			return "UNKNOWN";
+		}
+		if (type == null) {
+			return "UNKNOWN";
+		}
+		String name = TXN_NAMES.get(type);
+		return name != null ? name : type;
+	}
+
+	private static <R> CompletableFuture<R> record(LedgerMetrics current, String operation, long start, CompletableFuture<R> future) {
+		return future.whenComplete((result, error) -> current.completed(operation, System.nanoTime() - start,
+				result instanceof String ? ((String) result).length() : -1, error == null));
+	}
+}
@@ -0,0 +1,104 @@
+package utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 지연시간 히스토그램. HdrHistogram처럼 마이크로초 단위 2의 거듭제곱 구간을 다시 SUB_BUCKETS개의 같은 폭 구간으로 나눠 기록한다.
+ * 백분위수는 구간 상한값으로 근사되며 오차는 값의 1/SUB_BUCKETS(약 6%) 이내이다. 락 없이 여러 스레드에서 기록할 수 있다.
+ */
+public class LatencyHistogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	// 2^40us(약 12일)까지 구분한다. 그보다 크면 마지막 구간에 넣는다.
+	private static final int MAX_EXPONENT = 40;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalMicros = new AtomicLong();
+	private final AtomicLong maxMicros = new AtomicLong();
+
+	public void record(long nanos) {
+		long micros = Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos));
+		buckets.incrementAndGet(bucketOf(micros));
+		count.incrementAndGet();
+		totalMicros.addAndGet(micros);
+		long max;
+		while (micros > (max = maxMicros.get()) && !maxMicros.compareAndSet(max, micros)) {
+			// 다른 스레드가 먼저 갱신했으면 다시 비교
+		}
+	}
+
+	// SUB_BUCKETS 미만은 값 그대로, 그 이상은 (2의 거듭제곱 구간, 그 안의 같은 폭 구간)으로 나눈다.
+	private static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) micros;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+		int sub = (int) (micros >>> shift) - SUB_BUCKETS;
+		return Math.min(BUCKETS - 1, (shift + 1) * SUB_BUCKETS + sub);
+	}
+
+	// 구간에 들어가는 가장 큰 값(us)
+	private static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int shift = bucket / SUB_BUCKETS - 1;
+		long sub = SUB_BUCKETS + bucket % SUB_BUCKETS;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/** startNanos(System.nanoTime())부터 지금까지를 기록한다. */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public double getMeanMicros() {
+		long n = count.get();
+		return n == 0 ? 0 : (double) totalMicros.get() / n;
+	}
+
+	public long getMaxMicros() {
+		return maxMicros.get();
+	}
+
+	/** percentile(0~100)에 해당하는 구간의 상한값(us). */
+	public long getPercentileMicros(double percentile) {
+		long n = count.get();
+		if (n == 0) {
+			return 0;
+		}
+		long rank = (long) Math.ceil(n * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += buckets.get(i);
+			if (seen >= rank) {
+				return Math.min(upperBound(i), maxMicros.get());
+			}
+		}
+		return maxMicros.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++) {
+			buckets.set(i, 0);
+		}
+		count.set(0);
+		totalMicros.set(0);
+		maxMicros.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.0fus p50=%dus p90=%dus p99=%dus max=%dus",
+				getCount(), getMeanMicros(), getPercentileMicros(50), getPercentileMicros(90), getPercentileMicros(99), getMaxMicros());
+	}
+}
@@ -0,0 +1,165 @@
+package utils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 렛저에 한번 기록되면 바뀌지 않는 객체(Schema, Credential definition, Revocation registry definition)를 위한 read-through 캐시.
+ * 조회는 락 없이 ConcurrentHashMap에서 끝나고, 같은 ID에 대한 동시 요청은 진행중인 렛저 조회 하나를 공유한다.
+ * 값의 크기(weigher) 합이 maxWeight를 넘으면 오래 사용되지 않은 항목부터 제거한다. 실패한 조회는 캐시하지 않는다.
+ * 조회에 락을 걸지 않기 위해 LRU는 근사(second chance)로 한다. 적재된 항목을 적재 순서 큐에 두고, 큐 앞의 항목이
+ * 큐에 들어온 뒤 사용된 적이 있으면 뒤로 보내고 아니면 제거한다. 제거 비용은 항목 수와 무관하게 상각 O(1)이다.
+ */
+public class LedgerCache<V> {
+
+	public interface Loader<V> {
+		CompletableFuture<V> load(String id);
+	}
+
+	public interface Weigher<V> {
+		long weigh(String id, V value);
+	}
+
+	private static class Node<V> {
+		final CompletableFuture<V> future = new CompletableFuture<>();
+		volatile long lastAccess;
+		// 아래 필드는 writeLock 아래에서만 쓴다. queuedAt은 큐 뒤에 들어간 시점의 clock 값.
+		long queuedAt;
+		long weight;
+		boolean loaded;
+	}
+
+	private final long maxWeight;
+	private final Weigher<V> weigher;
+	private final ConcurrentHashMap<String, Node<V>> entries = new ConcurrentHashMap<>();
+	// 적재가 끝난 항목만 들어간다. writeLock 아래에서만 접근한다.
+	private final LinkedHashMap<String, Node<V>> queue = new LinkedHashMap<>();
+	private final AtomicLong clock = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final Object writeLock = new Object();
+	private long totalWeight;
+
+	public LedgerCache(long maxWeight, Weigher<V> weigher) {
+		this.maxWeight = maxWeight;
+		this.weigher = weigher;
+	}
+
+	public CompletableFuture<V> get(String id, Loader<V> loader) {
+		Node<V> entry = entries.get(id);
+		if (entry == null) {
+			Node<V> created = new Node<>();
+			entry = entries.putIfAbsent(id, created);
+			if (entry == null) {
+				misses.incrementAndGet();
+				created.lastAccess = clock.incrementAndGet();
+				load(id, created, loader);
+				return created.future.thenApply(Function.identity());
+			}
+		}
+		hits.incrementAndGet();
+		entry.lastAccess = clock.incrementAndGet();
+		return entry.future.thenApply(Function.identity());
+	}
+
+	private void load(String id, Node<V> entry, Loader<V> loader) {
+		CompletableFuture<V> loading;
+		try {
+			loading = loader.load(id);
+		} catch (RuntimeException e) {
+			loading = IndyFutures.failed(e);
+		}
+
+		loading.whenComplete((value, error) -> {
+			if (error != null) {
+				entries.remove(id, entry);
+				entry.future.completeExceptionally(error);
+				return;
+			}
+			synchronized (writeLock) {
+				if (entries.get(id) == entry) {
+					entry.weight = weigher.weigh(id, value);
+					entry.loaded = true;
+					entry.queuedAt = clock.get();
+					queue.put(id, entry);
+					totalWeight += entry.weight;
+					evictIfNeeded();
+				}
+			}
+			entry.future.complete(value);
+		});
+	}
+
+	// writeLock을 잡은 상태에서 호출된다. 뒤로 보내는 횟수는 큐 길이로 제한해서 조회가 계속 들어와도 끝나도록 한다.
+	private void evictIfNeeded() {
+		int spared = 0;
+		while (totalWeight > maxWeight && !queue.isEmpty()) {
+			Iterator<Map.Entry<String, Node<V>>> head = queue.entrySet().iterator();
+			Map.Entry<String, Node<V>> candidate = head.next();
+			String id = candidate.getKey();
+			Node<V> eldest = candidate.getValue();
+			head.remove();
+			if (eldest.lastAccess > eldest.queuedAt && spared < queue.size()) {
+				eldest.queuedAt = clock.get();
+				queue.put(id, eldest);
+				spared++;
+				continue;
+			}
+			entries.remove(id, eldest);
+			totalWeight -= eldest.weight;
+			evictions.incrementAndGet();
+		}
+	}
+
+	public void invalidate(String id) {
+		synchronized (writeLock) {
+			Node<V> removed = entries.remove(id);
+			if (removed != null && removed.loaded) {
+				queue.remove(id, removed);
+				totalWeight -= removed.weight;
+			}
+		}
+	}
+
+	public void invalidateAll() {
+		synchronized (writeLock) {
+			entries.clear();
+			queue.clear();
+			totalWeight = 0;
+		}
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public long getWeight() {
+		synchronized (writeLock) {
+			return totalWeight;
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	@Override
+	public String toString() {
+		return "LedgerCache{size=" + size() + ", weight=" + getWeight() + "/" + maxWeight
+				+ ", hits=" + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "}";
+	}
+}
@@ -0,0 +1,22 @@
+package utils;
+
+/**
+ * 렛저 호출(build, sign, submit, parse) 계측 값을 받는 인터페이스.
+ * 기본 구현은 InMemoryLedgerMetrics이며 IndyMetrics.set으로 다른 모니터링 시스템 어댑터로 바꿀 수 있다.
+ * 구현은 여러 스레드(libindy 콜백 스레드 포함)에서 동시에 호출되므로 블로킹 없이 빨리 끝나야 한다.
+ */
+public interface LedgerMetrics {
+
+	/** operation 호출이 시작됨 (in-flight +1) */
+	void started(String operation);
+
+	/**
+	 * operation 호출이 끝남 (in-flight -1)
+	 *
+	 * @param responseBytes 응답이 문자열이면 그 길이, 아니면 -1
+	 */
+	void completed(String operation, long nanos, int responseBytes, boolean success);
+
+	/** ensurePreviousRequestApplied 등에서 같은 요청을 다시 보냄 */
+	void retried(String operation);
+}
@@ -0,0 +1,243 @@
+package utils;
+
+import org.json.JSONException;
+
+/**
+ * 렛저 응답 JSON에서 필요한 필드만 뽑아내는 스트리밍 리더.
+ * org.json처럼 전체 트리를 만들지 않고 문자열을 한번 훑으면서 경로에 없는 값은 건너뛰므로,
+ * 큰 GET_REVOC_REG_DELTA 응답에서 seqNo 하나를 확인할 때도 응답 크기만큼의 객체를 만들지 않는다.
+ *
+ * 문자열 값은 unescape된 문자열로, 객체/배열 값은 원본 JSON 텍스트 그대로, 숫자/boolean은 텍스트로 돌려준다.
+ * 값이 없거나 JSON null이면 null을 돌려준다. JSON 형식이 깨졌으면 org.json과 같이 JSONException을 던진다.
+ */
+public final class LedgerResponse {
+
+	private LedgerResponse() {
+	}
+
+	/** REPLY, REQNACK, REJECT 등 */
+	public static String op(String response) {
+		return field(response, "op");
+	}
+
+	/** result.seqNo가 있으면 true. GET 요청에서 대상이 렛저에 기록되었는지 확인할 때 쓴다. */
+	public static boolean hasSeqNo(String response) {
+		return field(response, "result", "seqNo") != null;
+	}
+
+	public static long seqNo(String response) {
+		return toLong(field(response, "result", "seqNo"));
+	}
+
+	public static long txnTime(String response) {
+		return toLong(field(response, "result", "txnTime"));
+	}
+
+	/** result.data. GET_NYM, GET_ATTR처럼 data가 JSON 문자열이면 그 문자열을, 객체면 원본 JSON 텍스트를 돌려준다. */
+	public static String data(String response) {
+		return field(response, "result", "data");
+	}
+
+	public static String stateProof(String response) {
+		return field(response, "result", "state_proof");
+	}
+
+	/**
+	 * path를 따라 내려간 값을 돌려준다. 예: field(response, "result", "txnMetadata", "seqNo")
+	 */
+	public static String field(String json, String... path) {
+		if (json == null) {
+			return null;
+		}
+		Cursor cursor = new Cursor(json);
+		try {
+			for (String key : path) {
+				if (!cursor.enterMember(key)) {
+					return null;
+				}
+			}
+			return cursor.readValue();
+		} catch (IndexOutOfBoundsException | NumberFormatException e) {
+			// 닫히지 않은 문자열이나 잘못된 유니코드 이스케이프. 호출자는 org.json과 같이 JSONException만 처리한다.
+			throw new JSONException("JSON 형식 오류: " + json, e);
+		}
+	}
+
+	private static long toLong(String value) {
+		try {
+			return value == null ? -1 : Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new JSONException("숫자가 아님: " + value, e);
+		}
+	}
+
+	private static class Cursor {
+		private final String json;
+		private int pos;
+
+		Cursor(String json) {
+			this.json = json;
+		}
+
+		// 현재 위치의 객체에서 key 멤버의 값 앞으로 이동한다. 객체가 아니거나 key가 없으면 false
+		boolean enterMember(String key) {
+			skipWhitespace();
+			if (!consume('{')) {
+				return false;
+			}
+			while (true) {
+				skipWhitespace();
+				if (consume('}')) {
+					return false;
+				}
+				boolean matched = matchString(key);
+				skipWhitespace();
+				expect(':');
+				skipWhitespace();
+				if (matched) {
+					return true;
+				}
+				skipValue();
+				skipWhitespace();
+				if (!consume(',')) {
+					expect('}');
+					return false;
+				}
+			}
+		}
+
+		String readValue() {
+			skipWhitespace();
+			char c = peek();
+			if (c == '"') {
+				return readString();
+			}
+			int start = pos;
+			skipValue();
+			String raw = json.substring(start, pos);
+			return "null".equals(raw) ? null : raw;
+		}
+
+		// 문자열 토큰을 읽으며 key와 같은지 비교한다. 이스케이프가 없으면 새 문자열을 만들지 않는다.
+		private boolean matchString(String key) {
+			expect('"');
+			int start = pos;
+			while (true) {
+				char c = json.charAt(pos);
+				if (c == '"') {
+					boolean matched = pos - start == key.length() && json.regionMatches(start, key, 0, key.length());
+					pos++;
+					return matched;
+				}
+				if (c == '\\') {
+					pos = start - 1;
+					return key.equals(readString());
+				}
+				pos++;
+			}
+		}
+
+		private String readString() {
+			expect('"');
+			int start = pos;
+			StringBuilder decoded = null;
+			while (true) {
+				char c = json.charAt(pos);
+				if (c == '"') {
+					String value = decoded == null ? json.substring(start, pos) : decoded.toString();
+					pos++;
+					return value;
+				}
+				if (c == '\\') {
+					if (decoded == null) {
+						decoded = new StringBuilder(json.length() - start).append(json, start, pos);
+					}
+					char escaped = json.charAt(pos + 1);
+					pos += 2;
+					switch (escaped) {
+						case 'b': decoded.append('\b'); break;
+						case 'f': decoded.append('\f'); break;
+						case 'n': decoded.append('\n'); break;
+						case 'r': decoded.append('\r'); break;
+						case 't': decoded.append('\t'); break;
+						case 'u':
+							decoded.append((char) Integer.parseInt(json.substring(pos, pos + 4), 16));
+							pos += 4;
+							break;
+						default: decoded.append(escaped);
+					}
+					continue;
+				}
+				if (decoded != null) {
+					decoded.append(c);
+				}
+				pos++;
+			}
+		}
+
+		private void skipValue() {
+			char c = peek();
+			if (c == '"') {
+				skipString();
+			} else if (c == '{' || c == '[') {
+				int depth = 0;
+				do {
+					c = json.charAt(pos);
+					if (c == '"') {
+						skipString();
+						continue;
+					}
+					if (c == '{' || c == '[') {
+						depth++;
+					} else if (c == '}' || c == ']') {
+						depth--;
+					}
+					pos++;
+				} while (depth > 0);
+			} else {
+				while (pos < json.length() && ",}] \t\r\n".indexOf(json.charAt(pos)) < 0) {
+					pos++;
+				}
+			}
+		}
+
+		private void skipString() {
+			pos++;
+			while (true) {
+				char c = json.charAt(pos++);
+				if (c == '\\') {
+					pos++;
+				} else if (c == '"') {
+					return;
+				}
+			}
+		}
+
+		private void skipWhitespace() {
+			while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+				pos++;
+			}
+		}
+
+		private char peek() {
+			if (pos >= json.length()) {
+				throw new JSONException("JSON이 중간에 끝남: " + json);
+			}
+			return json.charAt(pos);
+		}
+
+		private boolean consume(char expected) {
+			if (pos < json.length() && json.charAt(pos) == expected) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private void expect(char expected) {
+			if (!consume(expected)) {
+				throw new JSONException("JSON 형식 오류: '" + expected + "' 필요 (위치 " + pos + ")");
+			}
+		}
+	}
+}
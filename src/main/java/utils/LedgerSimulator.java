@@ -0,0 +1,475 @@
+package utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 테스트/부하테스트용 프로세스 내 렛저 시뮬레이터.
+ * Ledger.build*Request가 만든 request JSON을 받아 indy-node와 같은 모양의 응답 JSON을 돌려주므로
+ * 응답은 그대로 Ledger.parse*Response에 넘길 수 있다. 서명 검증, state proof, 합의는 하지 않는다.
+ *
+ * 지원하는 트랜잭션: NYM, ATTRIB, SCHEMA, CLAIM_DEF, REVOC_REG_DEF, REVOC_REG_ENTRY 와 각각의 GET,
+ * 그리고 GET_REVOC_REG_DELTA.
+ *
+ * 응답 지연(latency), 쓰기가 읽기에 보이기까지의 지연(visibilityDelay),
+ * REQNACK/타임아웃 주입 비율을 설정할 수 있다.
+ */
+public class LedgerSimulator implements LedgerSubmitter {
+
+	private static final String NYM = "1";
+	private static final String ATTRIB = "100";
+	private static final String SCHEMA = "101";
+	private static final String CLAIM_DEF = "102";
+	private static final String GET_ATTR = "104";
+	private static final String GET_NYM = "105";
+	private static final String GET_SCHEMA = "107";
+	private static final String GET_CLAIM_DEF = "108";
+	private static final String REVOC_REG_DEF = "113";
+	private static final String REVOC_REG_ENTRY = "114";
+	private static final String GET_REVOC_REG_DEF = "115";
+	private static final String GET_REVOC_REG = "116";
+	private static final String GET_REVOC_REG_DELTA = "117";
+
+	private static class Txn {
+		final long seqNo;
+		final long txnTime;
+		final long visibleAt;
+		final JSONObject data;
+
+		Txn(long seqNo, long txnTime, long visibleAt, JSONObject data) {
+			this.seqNo = seqNo;
+			this.txnTime = txnTime;
+			this.visibleAt = visibleAt;
+			this.data = data;
+		}
+	}
+
+	// revocation registry의 누적 상태. REVOC_REG_ENTRY 마다 하나씩 쌓인다.
+	private static class RevocRegState {
+		final String accum;
+		final TreeSet<Integer> issued;
+		final TreeSet<Integer> revoked;
+
+		RevocRegState(String accum, TreeSet<Integer> issued, TreeSet<Integer> revoked) {
+			this.accum = accum;
+			this.issued = issued;
+			this.revoked = revoked;
+		}
+	}
+
+	private final Map<String, List<Txn>> txns = new HashMap<>();
+	private final Map<Txn, RevocRegState> revocRegStates = new HashMap<>();
+	private final AtomicLong seqNo = new AtomicLong(100);
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong reads = new AtomicLong();
+	private final AtomicLong injectedFailures = new AtomicLong();
+
+	private volatile long minLatency;
+	private volatile long maxLatency;
+	private volatile long visibilityDelay;
+	private volatile double reqnackRate;
+	private volatile double timeoutRate;
+
+	public void setLatency(long minLatency, long maxLatency) {
+		this.minLatency = minLatency;
+		this.maxLatency = Math.max(minLatency, maxLatency);
+	}
+
+	/** 쓰기 응답 후 GET에서 보이기까지 걸리는 시간. ensurePreviousRequestApplied의 재시도 경로를 재현할 때 쓴다. */
+	public void setVisibilityDelay(long visibilityDelay) {
+		this.visibilityDelay = visibilityDelay;
+	}
+
+	/** 요청 중 reqnackRate 비율은 REQNACK으로, timeoutRate 비율은 TimeoutException으로 실패시킨다. */
+	public void setFailureRates(double reqnackRate, double timeoutRate) {
+		this.reqnackRate = reqnackRate;
+		this.timeoutRate = timeoutRate;
+	}
+
+	public long getWriteCount() {
+		return writes.get();
+	}
+
+	public long getReadCount() {
+		return reads.get();
+	}
+
+	public long getInjectedFailureCount() {
+		return injectedFailures.get();
+	}
+
+	@Override
+	public CompletableFuture<String> submitRequest(String requestJson) {
+		long latency = minLatency == maxLatency ? minLatency : ThreadLocalRandom.current().nextLong(minLatency, maxLatency + 1);
+		if (latency <= 0) {
+			return CompletableFuture.completedFuture(requestJson).thenCompose(this::handle);
+		}
+		return IndyFutures.delay(latency).thenCompose(ignored -> handle(requestJson));
+	}
+
+	private CompletableFuture<String> handle(String requestJson) {
+		JSONObject request = new JSONObject(requestJson);
+		double roll = ThreadLocalRandom.current().nextDouble();
+		if (roll < timeoutRate) {
+			injectedFailures.incrementAndGet();
+			return IndyFutures.failed(new TimeoutException("LedgerSimulator: injected timeout"));
+		}
+		if (roll < timeoutRate + reqnackRate) {
+			injectedFailures.incrementAndGet();
+			return CompletableFuture.completedFuture(nack("REQNACK", request, "LedgerSimulator: injected REQNACK"));
+		}
+
+		JSONObject operation = request.optJSONObject("operation");
+		if (operation == null) {
+			return CompletableFuture.completedFuture(nack("REQNACK", request, "missed fields - operation"));
+		}
+		try {
+			return CompletableFuture.completedFuture(dispatch(request, operation));
+		} catch (RuntimeException e) {
+			return CompletableFuture.completedFuture(nack("REQNACK", request, e.toString()));
+		}
+	}
+
+	private String dispatch(JSONObject request, JSONObject operation) {
+		String type = operation.getString("type");
+		switch (type) {
+			case NYM:
+				return writeNym(request, operation);
+			case ATTRIB:
+				return writeAttrib(request, operation);
+			case SCHEMA:
+				return writeSchema(request, operation);
+			case CLAIM_DEF:
+				return writeClaimDef(request, operation);
+			case REVOC_REG_DEF:
+				return writeRevocRegDef(request, operation);
+			case REVOC_REG_ENTRY:
+				return writeRevocRegEntry(request, operation);
+			case GET_NYM:
+				return getNym(request, operation);
+			case GET_ATTR:
+				return getAttr(request, operation);
+			case GET_SCHEMA:
+				return getSchema(request, operation);
+			case GET_CLAIM_DEF:
+				return getClaimDef(request, operation);
+			case GET_REVOC_REG_DEF:
+				return getRevocRegDef(request, operation);
+			case GET_REVOC_REG:
+				return getRevocReg(request, operation);
+			case GET_REVOC_REG_DELTA:
+				return getRevocRegDelta(request, operation);
+			default:
+				return nack("REQNACK", request, "LedgerSimulator: unsupported transaction type " + type);
+		}
+	}
+
+	// ------------------------------------------------------------------ writes
+
+	private synchronized String writeNym(JSONObject request, JSONObject operation) {
+		String dest = operation.getString("dest");
+		Txn current = latest("nym:" + dest, Long.MAX_VALUE);
+		JSONObject data = new JSONObject()
+				.put("dest", dest)
+				.put("identifier", request.optString("identifier"));
+		String verkey = operation.optString("verkey", current != null ? current.data.optString("verkey", null) : null);
+		String role = operation.has("role") ? operation.optString("role", null)
+				: current != null ? current.data.optString("role", null) : null;
+		data.put("verkey", verkey != null ? verkey : JSONObject.NULL);
+		data.put("role", role != null ? role : JSONObject.NULL);
+		return writeReply(request, NYM, append("nym:" + dest, data), operationData(operation));
+	}
+
+	private synchronized String writeAttrib(JSONObject request, JSONObject operation) {
+		String dest = operation.getString("dest");
+		String raw = operation.optString("raw", null);
+		if (raw == null) {
+			return nack("REQNACK", request, "LedgerSimulator: only raw ATTRIB is supported");
+		}
+		Txn txn = null;
+		for (String name : new JSONObject(raw).keySet()) {
+			txn = append("attr:" + dest + ":" + name, new JSONObject().put("raw", raw));
+		}
+		if (txn == null) {
+			return nack("REQNACK", request, "empty raw attribute");
+		}
+		return writeReply(request, ATTRIB, txn, operationData(operation));
+	}
+
+	private synchronized String writeSchema(JSONObject request, JSONObject operation) {
+		JSONObject schema = operation.getJSONObject("data");
+		String key = "schema:" + request.getString("identifier") + ":" + schema.getString("name") + ":" + schema.getString("version");
+		if (txns.containsKey(key)) {
+			return nack("REJECT", request, "schema already exists: " + key);
+		}
+		return writeReply(request, SCHEMA, append(key, schema), operationData(operation));
+	}
+
+	private synchronized String writeClaimDef(JSONObject request, JSONObject operation) {
+		String key = "creddef:" + request.getString("identifier") + ":" + operation.get("ref") + ":"
+				+ operation.getString("signature_type") + ":" + operation.optString("tag", "tag");
+		if (txns.containsKey(key)) {
+			return nack("REJECT", request, "credential definition already exists: " + key);
+		}
+		return writeReply(request, CLAIM_DEF, append(key, operation.getJSONObject("data")), operationData(operation));
+	}
+
+	private synchronized String writeRevocRegDef(JSONObject request, JSONObject operation) {
+		String key = "revregdef:" + operation.getString("id");
+		if (txns.containsKey(key)) {
+			return nack("REJECT", request, "revocation registry definition already exists: " + key);
+		}
+		JSONObject definition = operationData(operation).put("ver", "1.0");
+		return writeReply(request, REVOC_REG_DEF, append(key, definition), operationData(operation));
+	}
+
+	private synchronized String writeRevocRegEntry(JSONObject request, JSONObject operation) {
+		String revocRegDefId = operation.getString("revocRegDefId");
+		if (!txns.containsKey("revregdef:" + revocRegDefId)) {
+			return nack("REJECT", request, "revocation registry definition not found: " + revocRegDefId);
+		}
+		JSONObject value = operation.getJSONObject("value");
+		Txn previous = latest("revreg:" + revocRegDefId, Long.MAX_VALUE);
+		RevocRegState previousState = previous != null ? revocRegStates.get(previous) : null;
+		TreeSet<Integer> issued = previousState != null ? new TreeSet<>(previousState.issued) : new TreeSet<>();
+		TreeSet<Integer> revoked = previousState != null ? new TreeSet<>(previousState.revoked) : new TreeSet<>();
+		for (int index : toIndexes(value.optJSONArray("issued"))) {
+			revoked.remove(index);
+			issued.add(index);
+		}
+		for (int index : toIndexes(value.optJSONArray("revoked"))) {
+			issued.remove(index);
+			revoked.add(index);
+		}
+
+		Txn txn = append("revreg:" + revocRegDefId, new JSONObject().put("accum", value.getString("accum")));
+		revocRegStates.put(txn, new RevocRegState(value.getString("accum"), issued, revoked));
+		return writeReply(request, REVOC_REG_ENTRY, txn, operationData(operation));
+	}
+
+	// ------------------------------------------------------------------ reads
+
+	private synchronized String getNym(JSONObject request, JSONObject operation) {
+		String dest = operation.getString("dest");
+		Txn txn = latest("nym:" + dest, System.currentTimeMillis());
+		JSONObject result = new JSONObject().put("dest", dest);
+		if (txn != null) {
+			JSONObject data = new JSONObject(txn.data.toString()).put("seqNo", txn.seqNo).put("txnTime", txn.txnTime);
+			result.put("data", data.toString());
+		}
+		return readReply(request, GET_NYM, result, txn);
+	}
+
+	private synchronized String getAttr(JSONObject request, JSONObject operation) {
+		String dest = operation.getString("dest");
+		String name = operation.optString("raw", null);
+		Txn txn = name != null ? latest("attr:" + dest + ":" + name, System.currentTimeMillis()) : null;
+		JSONObject result = new JSONObject().put("dest", dest).put("raw", name != null ? name : JSONObject.NULL);
+		if (txn != null) {
+			result.put("data", txn.data.getString("raw"));
+		}
+		return readReply(request, GET_ATTR, result, txn);
+	}
+
+	private synchronized String getSchema(JSONObject request, JSONObject operation) {
+		String dest = operation.getString("dest");
+		JSONObject query = operation.getJSONObject("data");
+		Txn txn = latest("schema:" + dest + ":" + query.getString("name") + ":" + query.getString("version"), System.currentTimeMillis());
+		JSONObject result = new JSONObject().put("dest", dest).put("data", txn != null ? txn.data : query);
+		return readReply(request, GET_SCHEMA, result, txn);
+	}
+
+	private synchronized String getClaimDef(JSONObject request, JSONObject operation) {
+		String key = "creddef:" + operation.getString("origin") + ":" + operation.get("ref") + ":"
+				+ operation.getString("signature_type") + ":" + operation.optString("tag", "tag");
+		Txn txn = latest(key, System.currentTimeMillis());
+		JSONObject result = new JSONObject()
+				.put("ref", operation.get("ref"))
+				.put("origin", operation.getString("origin"))
+				.put("signature_type", operation.getString("signature_type"))
+				.put("tag", operation.optString("tag", "tag"));
+		if (txn != null) {
+			result.put("data", txn.data);
+		}
+		return readReply(request, GET_CLAIM_DEF, result, txn);
+	}
+
+	private synchronized String getRevocRegDef(JSONObject request, JSONObject operation) {
+		String id = operation.getString("id");
+		Txn txn = latest("revregdef:" + id, System.currentTimeMillis());
+		JSONObject result = new JSONObject().put("id", id);
+		if (txn != null) {
+			result.put("data", txn.data);
+		}
+		return readReply(request, GET_REVOC_REG_DEF, result, txn);
+	}
+
+	private synchronized String getRevocReg(JSONObject request, JSONObject operation) {
+		String revocRegDefId = operation.getString("revocRegDefId");
+		long timestamp = operation.getLong("timestamp");
+		Txn txn = latestAt("revreg:" + revocRegDefId, timestamp);
+		JSONObject result = new JSONObject().put("revocRegDefId", revocRegDefId).put("timestamp", timestamp);
+		if (txn != null) {
+			result.put("data", accumEntry(revocRegDefId, txn, false));
+		}
+		return readReply(request, GET_REVOC_REG, result, txn);
+	}
+
+	private synchronized String getRevocRegDelta(JSONObject request, JSONObject operation) {
+		String revocRegDefId = operation.getString("revocRegDefId");
+		long to = operation.getLong("to");
+		Txn toTxn = latestAt("revreg:" + revocRegDefId, to);
+		JSONObject result = new JSONObject().put("revocRegDefId", revocRegDefId).put("to", to);
+		if (toTxn == null) {
+			return readReply(request, GET_REVOC_REG_DELTA, result, null);
+		}
+
+		RevocRegState toState = revocRegStates.get(toTxn);
+		TreeSet<Integer> issued = new TreeSet<>(toState.issued);
+		TreeSet<Integer> revoked = new TreeSet<>(toState.revoked);
+		JSONObject value = new JSONObject().put("accum_to", accumEntry(revocRegDefId, toTxn, true));
+
+		Txn fromTxn = null;
+		if (operation.has("from") && !operation.isNull("from")) {
+			long from = operation.getLong("from");
+			result.put("from", from);
+			fromTxn = latestAt("revreg:" + revocRegDefId, from);
+		}
+		if (fromTxn != null) {
+			RevocRegState fromState = revocRegStates.get(fromTxn);
+			value.put("accum_from", accumEntry(revocRegDefId, fromTxn, true));
+			issued.removeAll(fromState.issued);
+			for (int index : fromState.revoked) {
+				if (!toState.revoked.contains(index)) {
+					issued.add(index);
+				}
+			}
+			revoked.removeAll(fromState.revoked);
+		}
+		value.put("issued", new JSONArray(issued)).put("revoked", new JSONArray(revoked));
+
+		result.put("data", new JSONObject()
+				.put("revocDefType", "CL_ACCUM")
+				.put("revocRegDefId", revocRegDefId)
+				.put("value", value));
+		return readReply(request, GET_REVOC_REG_DELTA, result, toTxn);
+	}
+
+	// ------------------------------------------------------------------ helpers
+
+	private Txn append(String key, JSONObject data) {
+		long now = System.currentTimeMillis();
+		Txn txn = new Txn(seqNo.incrementAndGet(), now / 1000, now + visibilityDelay, data);
+		txns.computeIfAbsent(key, k -> new ArrayList<>()).add(txn);
+		return txn;
+	}
+
+	private Txn latest(String key, long now) {
+		List<Txn> history = txns.get(key);
+		if (history == null) {
+			return null;
+		}
+		for (int i = history.size() - 1; i >= 0; i--) {
+			if (history.get(i).visibleAt <= now) {
+				return history.get(i);
+			}
+		}
+		return null;
+	}
+
+	// timestamp(초) 시점에 유효했던, 현재 보이는 가장 최신 트랜잭션
+	private Txn latestAt(String key, long timestamp) {
+		List<Txn> history = txns.get(key);
+		if (history == null) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		for (int i = history.size() - 1; i >= 0; i--) {
+			Txn txn = history.get(i);
+			if (txn.txnTime <= timestamp && txn.visibleAt <= now) {
+				return txn;
+			}
+		}
+		return null;
+	}
+
+	private JSONObject accumEntry(String revocRegDefId, Txn txn, boolean withTxnTime) {
+		JSONObject entry = new JSONObject()
+				.put("revocDefType", "CL_ACCUM")
+				.put("revocRegDefId", revocRegDefId)
+				.put("value", new JSONObject().put("accum", revocRegStates.get(txn).accum));
+		if (withTxnTime) {
+			entry.put("txnTime", txn.txnTime).put("seqNo", txn.seqNo);
+		}
+		return entry;
+	}
+
+	private static List<Integer> toIndexes(JSONArray array) {
+		List<Integer> indexes = new ArrayList<>();
+		if (array != null) {
+			for (int i = 0; i < array.length(); i++) {
+				indexes.add(((Number) array.get(i)).intValue());
+			}
+		}
+		return indexes;
+	}
+
+	private static JSONObject operationData(JSONObject operation) {
+		JSONObject data = new JSONObject();
+		for (String key : operation.keySet()) {
+			if (!"type".equals(key)) {
+				data.put(key, operation.get(key));
+			}
+		}
+		return data;
+	}
+
+	private String writeReply(JSONObject request, String type, Txn txn, JSONObject txnData) {
+		writes.incrementAndGet();
+		JSONObject result = new JSONObject()
+				.put("ver", "1")
+				.put("txn", new JSONObject()
+						.put("type", type)
+						.put("protocolVersion", request.optInt("protocolVersion", PoolUtils.PROTOCOL_VERSION))
+						.put("data", txnData)
+						.put("metadata", new JSONObject()
+								.put("from", request.optString("identifier"))
+								.put("reqId", request.optLong("reqId"))))
+				.put("txnMetadata", new JSONObject().put("seqNo", txn.seqNo).put("txnTime", txn.txnTime))
+				.put("reqSignature", new JSONObject());
+		return new JSONObject().put("op", "REPLY").put("result", result).toString();
+	}
+
+	private String readReply(JSONObject request, String type, JSONObject result, Txn txn) {
+		reads.incrementAndGet();
+		result.put("type", type)
+				.put("identifier", request.optString("identifier"))
+				.put("reqId", request.optLong("reqId"))
+				.put("seqNo", txn != null ? txn.seqNo : JSONObject.NULL)
+				.put("txnTime", txn != null ? txn.txnTime : JSONObject.NULL)
+				.put("state_proof", new JSONObject());
+		if (!result.has("data")) {
+			result.put("data", JSONObject.NULL);
+		}
+		return new JSONObject().put("op", "REPLY").put("result", result).toString();
+	}
+
+	private static String nack(String op, JSONObject request, String reason) {
+		return new JSONObject()
+				.put("op", op)
+				.put("identifier", request.optString("identifier"))
+				.put("reqId", request.optLong("reqId"))
+				.put("reason", reason)
+				.toString();
+	}
+}
@@ -0,0 +1,20 @@
+package utils;
+
+import org.hyperledger.indy.sdk.ledger.Ledger;
+import org.hyperledger.indy.sdk.pool.Pool;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 서명까지 끝난 request JSON을 렛저에 보내고 응답 JSON을 받는 부분만 떼어낸 인터페이스.
+ * 실제 pool 대신 LedgerSimulator를 넣어 pool 없이 파이프라인을 부하 테스트할 수 있다.
+ */
+public interface LedgerSubmitter {
+
+	CompletableFuture<String> submitRequest(String requestJson);
+
+	static LedgerSubmitter of(Pool pool) {
+		return requestJson -> IndyMetrics.call("submitRequest " + IndyMetrics.txnName(requestJson),
+				() -> Ledger.submitRequest(pool, requestJson));
+	}
+}
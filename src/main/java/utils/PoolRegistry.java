@@ -0,0 +1,286 @@
+package utils;
+
+import org.hyperledger.indy.sdk.pool.Pool;
+import org.hyperledger.indy.sdk.pool.PoolLedgerConfigExistsException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static utils.PoolUtils.PROTOCOL_VERSION;
+
+/**
+ * 프로세스 전체에서 공유하는 Pool 핸들 관리자.
+ * 이름별로 pool을 한번만 열고(catch-up 포함) 참조 카운트가 있는 lease로 나눠준다.
+ * 열린 pool은 백그라운드에서 주기적으로 refreshPoolLedger를 호출해 노드 목록을 최신으로 유지한다.
+ * lease가 모두 반납된 뒤 idleTimeout 동안 다시 쓰이지 않은 pool은 refresh 주기에 맞춰 닫는다. 다음 acquire는 다시 연다.
+ */
+public class PoolRegistry {
+
+	private static final long DEFAULT_REFRESH_INTERVAL = 60_000;
+	private static final long DEFAULT_IDLE_TIMEOUT = 10 * 60_000;
+	private static final PoolRegistry INSTANCE = new PoolRegistry(DEFAULT_REFRESH_INTERVAL, DEFAULT_IDLE_TIMEOUT);
+
+	public static PoolRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	public static class PoolStats {
+		private final long openMillis;
+		private final long refreshCount;
+		private final long lastRefreshMillis;
+		private final int refCount;
+
+		PoolStats(long openMillis, long refreshCount, long lastRefreshMillis, int refCount) {
+			this.openMillis = openMillis;
+			this.refreshCount = refreshCount;
+			this.lastRefreshMillis = lastRefreshMillis;
+			this.refCount = refCount;
+		}
+
+		/** config 생성부터 openPoolLedger(catch-up 포함) 완료까지 걸린 시간. 아직 열리지 않았으면 -1. */
+		public long getOpenMillis() {
+			return openMillis;
+		}
+
+		public long getRefreshCount() {
+			return refreshCount;
+		}
+
+		/** 마지막 refreshPoolLedger에 걸린 시간. 한번도 하지 않았으면 -1. */
+		public long getLastRefreshMillis() {
+			return lastRefreshMillis;
+		}
+
+		public int getRefCount() {
+			return refCount;
+		}
+
+		@Override
+		public String toString() {
+			return "PoolStats{openMillis=" + openMillis + ", refreshCount=" + refreshCount
+					+ ", lastRefreshMillis=" + lastRefreshMillis + ", refCount=" + refCount + "}";
+		}
+	}
+
+	public static class PoolLease implements AutoCloseable {
+		private final PooledPool pooled;
+		private final Pool pool;
+		private boolean released;
+
+		PoolLease(PooledPool pooled, Pool pool) {
+			this.pooled = pooled;
+			this.pool = pool;
+		}
+
+		public Pool getPool() {
+			return pool;
+		}
+
+		@Override
+		public void close() {
+			synchronized (this) {
+				if (released) {
+					return;
+				}
+				released = true;
+			}
+			synchronized (pooled) {
+				pooled.refCount.decrementAndGet();
+				pooled.lastUsed = System.currentTimeMillis();
+			}
+		}
+	}
+
+	private static class PooledPool {
+		final CompletableFuture<Pool> pool = new CompletableFuture<>();
+		final AtomicInteger refCount = new AtomicInteger();
+		final AtomicLong refreshCount = new AtomicLong();
+		volatile long openMillis = -1;
+		volatile long lastRefreshMillis = -1;
+		// 아래 필드는 pooled를 잡고 바꾼다.
+		long lastUsed = System.currentTimeMillis();
+		volatile boolean closed;
+		// closed가 된 뒤 closePoolLedger가 끝나고 registry에서 빠지면 완료된다.
+		CompletableFuture<Void> closing;
+	}
+
+	private final long refreshInterval;
+	private final long idleTimeout;
+	private final ConcurrentHashMap<String, PooledPool> pools = new ConcurrentHashMap<>();
+
+	public PoolRegistry(long refreshInterval, long idleTimeout) {
+		this.refreshInterval = refreshInterval;
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * pool을 미리 열어둔다. 이미 열려 있거나 여는 중이면 그 결과를 공유한다.
+	 */
+	public CompletableFuture<Pool> warmUp(String poolName) {
+		return pooled(poolName).pool.thenApply(pool -> pool);
+	}
+
+	/**
+	 * 열린 pool의 lease를 얻는다. 아직 열리지 않았으면 열릴 때까지 대기한다. 사용이 끝나면 lease를 close해야 한다.
+	 */
+	public PoolLease acquire(String poolName) throws ExecutionException, InterruptedException {
+		while (true) {
+			PooledPool pooled = pooled(poolName);
+			Pool pool = IndyFutures.get(pooled.pool);
+			CompletableFuture<Void> closing;
+			synchronized (pooled) {
+				closing = pooled.closing;
+				if (closing == null) {
+					pooled.refCount.incrementAndGet();
+					return new PoolLease(pooled, pool);
+				}
+			}
+			// 같은 이름의 pool을 닫는 중에 다시 열지 않도록 닫기가 끝난 뒤 새로 연다.
+			try {
+				closing.get();
+			} catch (ExecutionException e) {
+				// close의 handle에서 실패를 처리하므로 여기까지 오지 않는다.
+			}
+		}
+	}
+
+	public PoolStats getStats(String poolName) {
+		PooledPool pooled = pools.get(poolName);
+		if (pooled == null) {
+			return null;
+		}
+		return new PoolStats(pooled.openMillis, pooled.refreshCount.get(), pooled.lastRefreshMillis, pooled.refCount.get());
+	}
+
+	/**
+	 * 모든 pool을 닫는다. 남아있는 lease가 있어도 닫으므로 프로세스 종료시에만 호출한다.
+	 * 닫기에 실패한 pool이 있어도 나머지는 모두 닫고, 첫 실패를 던진다. 나머지 실패는 suppressed로 붙는다.
+	 */
+	public void shutdown() throws ExecutionException, InterruptedException {
+		List<CompletableFuture<Void>> closing = new ArrayList<>();
+		for (String poolName : pools.keySet()) {
+			PooledPool pooled = pools.remove(poolName);
+			if (pooled == null) {
+				continue;
+			}
+			synchronized (pooled) {
+				pooled.closed = true;
+				if (pooled.closing != null) {
+					// idle로 이미 닫는 중이다. 실패는 거기서 로그로 남긴다.
+					closing.add(pooled.closing);
+					continue;
+				}
+			}
+			// 열기에 실패한 pool은 닫을 것이 없다.
+			closing.add(pooled.pool.handle((pool, error) -> pool)
+					.thenCompose(pool -> pool == null ? CompletableFuture.<Void>completedFuture(null) : IndyFutures.call(pool::closePoolLedger)));
+		}
+
+		ExecutionException failure = null;
+		for (CompletableFuture<Void> close : closing) {
+			try {
+				IndyFutures.get(close);
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e;
+				} else {
+					failure.addSuppressed(e.getCause() != null ? e.getCause() : e);
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private PooledPool pooled(String poolName) {
+		PooledPool existing = pools.get(poolName);
+		if (existing != null) {
+			return existing;
+		}
+		PooledPool created = new PooledPool();
+		existing = pools.putIfAbsent(poolName, created);
+		if (existing != null) {
+			return existing;
+		}
+		open(poolName, created);
+		return created;
+	}
+
+	// 호출한 스레드를 막지 않도록 protocol version 설정부터 openPoolLedger까지 모두 비동기로 잇는다.
+	private void open(String poolName, PooledPool pooled) {
+		long start = System.currentTimeMillis();
+		IndyFutures.call(() -> Pool.setProtocolVersion(PROTOCOL_VERSION))
+				// genesis 파일 쓰기와 config 생성은 블로킹이므로 libindy 콜백 스레드가 아닌 공용 풀에서 한다.
+				.thenRunAsync(() -> createPoolLedgerConfigIfAbsent(poolName))
+				.thenCompose(ignored -> IndyFutures.call(() -> Pool.openPoolLedger(poolName, "{}")))
+				.whenComplete((pool, error) -> {
+					if (error != null) {
+						// 다음 acquire에서 다시 열 수 있도록 실패한 항목은 제거한다.
+						pools.remove(poolName, pooled);
+						pooled.pool.completeExceptionally(error);
+						return;
+					}
+					pooled.openMillis = System.currentTimeMillis() - start;
+					pooled.pool.complete(pool);
+					scheduleRefresh(poolName, pool, pooled);
+				});
+	}
+
+	private static void createPoolLedgerConfigIfAbsent(String poolName) {
+		try {
+			PoolUtils.createPoolLedgerConfig(poolName);
+		} catch (ExecutionException e) {
+			if (!(e.getCause() instanceof PoolLedgerConfigExistsException)) {
+				throw new CompletionException(e.getCause());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CompletionException(e);
+		} catch (Exception e) {
+			throw new CompletionException(e);
+		}
+	}
+
+	private void scheduleRefresh(String poolName, Pool pool, PooledPool pooled) {
+		IndyFutures.delay(refreshInterval).thenRun(() -> {
+			if (pooled.closed || closeIfIdle(poolName, pool, pooled)) {
+				return;
+			}
+			long start = System.currentTimeMillis();
+			IndyFutures.call(pool::refreshPoolLedger).whenComplete((ignored, error) -> {
+				if (error == null) {
+					pooled.lastRefreshMillis = System.currentTimeMillis() - start;
+					pooled.refreshCount.incrementAndGet();
+				} else {
+					System.err.println("refreshPoolLedger 실패: " + error);
+				}
+				scheduleRefresh(poolName, pool, pooled);
+			});
+		});
+	}
+
+	// lease가 없고 idleTimeout이 지났으면 닫기를 시작하고 true. closePoolLedger가 끝난 뒤에 registry에서 뺀다.
+	private boolean closeIfIdle(String poolName, Pool pool, PooledPool pooled) {
+		synchronized (pooled) {
+			if (pooled.refCount.get() > 0 || System.currentTimeMillis() - pooled.lastUsed < idleTimeout) {
+				return false;
+			}
+			pooled.closed = true;
+			pooled.closing = IndyFutures.call(pool::closePoolLedger).handle((ignored, error) -> {
+				if (error != null) {
+					System.err.println("closePoolLedger 실패: " + error);
+				}
+				pools.remove(poolName, pooled);
+				return null;
+			});
+		}
+		return true;
+	}
+}
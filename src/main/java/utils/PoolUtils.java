@@ -2,7 +2,6 @@ package utils;
 
 import org.apache.commons.io.FileUtils;
 import org.hyperledger.indy.sdk.IndyException;
-import org.hyperledger.indy.sdk.ledger.Ledger;
 import org.hyperledger.indy.sdk.pool.Pool;
 import org.hyperledger.indy.sdk.pool.PoolJSONParameters;
 import org.json.JSONException;
@@ -10,7 +9,9 @@ import org.json.JSONException;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class PoolUtils {
 
@@ -19,6 +20,7 @@ public class PoolUtils {
 	public static final int TEST_TIMEOUT_FOR_REQUEST_ENSURE = 200_000;
 	private static final int RESUBMIT_REQUEST_TIMEOUT = 5_000;
 	private static final int RESUBMIT_REQUEST_CNT = 3;
+	private static final long RESUBMIT_INITIAL_BACKOFF = 20;
 
 	private static File createGenesisTxnFile(String filename) throws IOException {
 		String path = EnvironmentUtils.getTmpPath(filename);
@@ -67,19 +69,58 @@ public class PoolUtils {
 	}
 
 	public static String ensurePreviousRequestApplied(Pool pool, String checkerRequest, PoolResponseChecker checker) throws IndyException, ExecutionException, InterruptedException {
-		for (int i = 0; i < RESUBMIT_REQUEST_CNT; i++) {
-			String response = Ledger.submitRequest(pool, checkerRequest).get();
+		return IndyFutures.get(ensurePreviousRequestAppliedAsync(pool, checkerRequest, checker));
+	}
+
+	/**
+	 * checkerRequest를 checker가 true를 반환할 때까지 재전송한다.
+	 * 재전송 간격은 RESUBMIT_INITIAL_BACKOFF부터 RESUBMIT_REQUEST_TIMEOUT까지 지터를 섞어 두 배씩 늘어나며,
+	 * 전체 대기 시간은 기존 동기 방식과 같은 RESUBMIT_REQUEST_CNT * RESUBMIT_REQUEST_TIMEOUT 이다.
+	 * 제한 시간 안에 적용되지 않으면 IllegalStateException으로 완료된다.
+	 */
+	public static CompletableFuture<String> ensurePreviousRequestAppliedAsync(Pool pool, String checkerRequest, PoolResponseChecker checker) {
+		return ensurePreviousRequestAppliedAsync(LedgerSubmitter.of(pool), checkerRequest, checker);
+	}
+
+	public static CompletableFuture<String> ensurePreviousRequestAppliedAsync(LedgerSubmitter ledger, String checkerRequest, PoolResponseChecker checker) {
+		String operation = "ensurePreviousRequestApplied " + IndyMetrics.txnName(checkerRequest);
+		CompletableFuture<String> result = new CompletableFuture<>();
+		// 첫 제출 전에 타이머를 시작해야 전체 재시도 시간이 기록된다.
+		CompletableFuture<String> tracked = IndyMetrics.track(operation, result);
+		long deadline = System.currentTimeMillis() + (long) RESUBMIT_REQUEST_CNT * RESUBMIT_REQUEST_TIMEOUT;
+		submitAndCheck(ledger, checkerRequest, checker, result, RESUBMIT_INITIAL_BACKOFF, deadline, operation);
+		return tracked;
+	}
+
+	private static void submitAndCheck(LedgerSubmitter ledger, String checkerRequest, PoolResponseChecker checker,
+									   CompletableFuture<String> result, long backoff, long deadline, String operation) {
+		ledger.submitRequest(checkerRequest).whenComplete((response, error) -> {
+			if (error != null) {
+				result.completeExceptionally(error);
+				return;
+			}
 			try {
 				if (checker.check(response)) {
-					return response;
+					result.complete(response);
+					return;
 				}
 			} catch (JSONException e) {
-				e.printStackTrace();
 				System.err.println(e.toString());
 				System.err.println(response);
+			} catch (RuntimeException e) {
+				result.completeExceptionally(e);
+				return;
 			}
-			Thread.sleep(RESUBMIT_REQUEST_TIMEOUT);
-		}
-		throw new IllegalStateException("reuqest가 렛저에 적용안댐!!!");
+
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				result.completeExceptionally(new IllegalStateException("reuqest가 렛저에 적용안댐!!!"));
+				return;
+			}
+			long delay = Math.min(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1), remaining);
+			long nextBackoff = Math.min(backoff * 2, RESUBMIT_REQUEST_TIMEOUT);
+			IndyMetrics.retried(operation);
+			IndyFutures.delay(delay).thenRun(() -> submitAndCheck(ledger, checkerRequest, checker, result, nextBackoff, deadline, operation));
+		});
 	}
 }
@@ -0,0 +1,162 @@
+package utils;
+
+import org.hyperledger.indy.sdk.blob_storage.BlobStorageReader;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * revocation registry별 tails 파일 접근을 한 곳에서 관리한다.
+ * tails 파일은 1백만개 증명서 기준 약 200MB라서, createRevocationState/issuerRevokeCredential 때마다
+ * BlobStorageReader를 새로 열고 디스크에서 다시 읽지 않도록 registry당 reader 핸들 하나를 만들어 스레드 간에 공유한다.
+ *
+ * 등록 시 tails 파일을 읽기 전용으로 mmap하고 load()로 미리 page fault를 일으켜 둔다.
+ * libindy는 자기 파일 핸들로 tails를 읽지만 같은 page cache를 쓰므로 첫 접근부터 디스크를 기다릴 가능성이 줄어든다.
+ * mmap은 페이지를 고정하지 않으므로 메모리가 부족하면 OS가 내보낼 수 있고, 그때는 다시 디스크에서 읽는다.
+ *
+ * libindy에는 blob storage reader를 닫는 API가 없다. 그래서 registry당 reader는 한번만 열고 release 이후에도 보관했다가
+ * 같은 registry가 다시 필요하면 그 reader를 재사용한다. release는 매핑만 놓는다.
+ */
+public class TailsRegistry {
+
+	// FileChannel.map은 한번에 2GB 미만까지만 매핑되므로 큰 파일은 나눠서 매핑한다.
+	private static final long MAX_CHUNK = 1L << 30;
+
+	private static class Tails {
+		final Path path;
+		final long size;
+		final List<MappedByteBuffer> chunks;
+		final BlobStorageReader reader;
+
+		Tails(Path path, long size, List<MappedByteBuffer> chunks, BlobStorageReader reader) {
+			this.path = path;
+			this.size = size;
+			this.chunks = chunks;
+			this.reader = reader;
+		}
+	}
+
+	private final String baseDir;
+	private final ConcurrentHashMap<String, Tails> registries = new ConcurrentHashMap<>();
+	// 닫을 수 없는 reader를 registry마다 하나만 두도록 release 후에도 남겨 둔다.
+	private final ConcurrentHashMap<String, BlobStorageReader> readers = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Object> openLocks = new ConcurrentHashMap<>();
+
+	/**
+	 * @param baseDir BlobStorageWriter의 base_dir. revocation registry definition의 tailsLocation이 로컬 파일이 아닐 때
+	 *                baseDir/tailsHash 에서 tails 파일을 찾는다.
+	 */
+	public TailsRegistry(String baseDir) {
+		this.baseDir = baseDir.replace('\\', '/');
+	}
+
+	/**
+	 * revocation registry definition(JSON)에 해당하는 공유 reader 핸들을 돌려준다. 처음 요청된 registry면 tails 파일을
+	 * 매핑/프리폴트하고 reader를 연다. 반환된 핸들은 닫지 않고 여러 스레드에서 같이 사용한다.
+	 */
+	public int getReaderHandle(String revRegDefJson) throws ExecutionException, InterruptedException {
+		JSONObject revRegDef = new JSONObject(revRegDefJson);
+		String revRegId = revRegDef.getString("id");
+		Tails tails = registries.get(revRegId);
+		if (tails == null) {
+			tails = open(revRegId, revRegDef.getJSONObject("value"));
+		}
+		return tails.reader.getBlobStorageReaderHandle();
+	}
+
+	/** 시작 시점에 알려진 registry들을 미리 열어 첫 요청이 tails 파일 로딩을 기다리지 않도록 한다. */
+	public void warmUp(Collection<String> revRegDefJsons) throws ExecutionException, InterruptedException {
+		for (String revRegDefJson : revRegDefJsons) {
+			getReaderHandle(revRegDefJson);
+		}
+	}
+
+	/**
+	 * registry를 더 이상 자주 쓰지 않을 때(예: rollover 이후) 매핑을 놓는다. 이미 나간 reader 핸들은 계속 유효하고,
+	 * 나중에 같은 registry를 다시 요청하면 새 reader를 열지 않고 그 핸들을 돌려준다.
+	 */
+	public void release(String revRegId) {
+		Object lock = openLocks.computeIfAbsent(revRegId, id -> new Object());
+		synchronized (lock) {
+			registries.remove(revRegId);
+		}
+	}
+
+	public boolean isLoaded(String revRegId) {
+		return registries.containsKey(revRegId);
+	}
+
+	public long getMappedBytes() {
+		long total = 0;
+		for (Tails tails : registries.values()) {
+			total += tails.size;
+		}
+		return total;
+	}
+
+	public int size() {
+		return registries.size();
+	}
+
+	private Tails open(String revRegId, JSONObject value) throws ExecutionException, InterruptedException {
+		Object lock = openLocks.computeIfAbsent(revRegId, id -> new Object());
+		synchronized (lock) {
+			Tails existing = registries.get(revRegId);
+			if (existing != null) {
+				return existing;
+			}
+			Path path = resolvePath(value);
+			long size;
+			List<MappedByteBuffer> chunks = new ArrayList<>();
+			try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+				size = channel.size();
+				for (long position = 0; position < size; position += MAX_CHUNK) {
+					MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAX_CHUNK, size - position));
+					chunk.load();
+					chunks.add(chunk);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("tails 파일을 열수 없음: " + path, e);
+			}
+
+			BlobStorageReader reader = readers.get(revRegId);
+			if (reader == null) {
+				// libindy default reader는 base_dir/tailsHash 파일을 읽는다. resolvePath가 그 이름의 파일만 돌려주므로 그 디렉토리가 base_dir이다.
+				String readerConfig = new JSONObject()
+						.put("base_dir", path.getParent().toString().replace('\\', '/'))
+						.put("uri_pattern", "")
+						.toString();
+				reader = IndyFutures.get(IndyFutures.call(() -> BlobStorageReader.openReader("default", readerConfig)));
+				readers.put(revRegId, reader);
+			}
+			Tails opened = new Tails(path, size, chunks, reader);
+			registries.put(revRegId, opened);
+			return opened;
+		}
+	}
+
+	// libindy가 찾는 이름(tailsHash)의 파일. tailsLocation이 그 이름의 로컬 파일이면 그것을, 아니면 baseDir/tailsHash를 쓴다.
+	private Path resolvePath(JSONObject value) {
+		String tailsHash = value.getString("tailsHash");
+		String tailsLocation = value.optString("tailsLocation", null);
+		if (tailsLocation != null && !tailsLocation.isEmpty()) {
+			Path location = Paths.get(tailsLocation);
+			if (Files.isRegularFile(location) && location.getFileName().toString().equals(tailsHash)) {
+				return location.toAbsolutePath();
+			}
+		}
+		return Paths.get(baseDir, tailsHash).toAbsolutePath();
+	}
+}
@@ -0,0 +1,226 @@
+package utils;
+
+import org.hyperledger.indy.sdk.wallet.Wallet;
+import org.hyperledger.indy.sdk.wallet.WalletExistsException;
+import org.json.JSONObject;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 열린 Wallet 핸들을 wallet id별로 재사용한다. openWallet은 키 유도(key derivation) 때문에 비싸므로
+ * 여러 holder를 서비스하는 agent가 요청마다 지갑을 다시 열지 않도록 한다.
+ * 지갑별 동시 작업 수는 maxConcurrentOps로 제한되고, idleTimeout 동안 사용되지 않은 지갑은 백그라운드에서 닫힌다.
+ * 열린 지갑은 처음 연 credentials로만 다시 얻을 수 있고, shutdown 이후에는 acquire가 IllegalStateException으로 실패한다.
+ */
+public class WalletRegistry {
+
+	public static class WalletLease implements AutoCloseable {
+		private final OpenWallet entry;
+		private boolean released;
+
+		WalletLease(OpenWallet entry) {
+			this.entry = entry;
+		}
+
+		public Wallet getWallet() {
+			return entry.wallet;
+		}
+
+		@Override
+		public void close() {
+			synchronized (this) {
+				if (released) {
+					return;
+				}
+				released = true;
+			}
+			entry.permits.release();
+			synchronized (entry) {
+				entry.active--;
+				entry.lastUsed = System.currentTimeMillis();
+			}
+		}
+	}
+
+	private static class OpenWallet {
+		final Wallet wallet;
+		final JSONObject credentials;
+		final Semaphore permits;
+		int active;
+		long lastUsed = System.currentTimeMillis();
+		boolean closed;
+		// closed가 된 뒤 closeWallet이 끝나고 registry에서 빠지면 완료된다.
+		CompletableFuture<Void> closing;
+
+		OpenWallet(Wallet wallet, JSONObject credentials, int maxConcurrentOps) {
+			this.wallet = wallet;
+			this.credentials = credentials;
+			this.permits = new Semaphore(maxConcurrentOps, true);
+		}
+	}
+
+	private final int maxConcurrentOps;
+	private final long idleTimeout;
+	private final ConcurrentHashMap<String, OpenWallet> wallets = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<String, Object> openLocks = new ConcurrentHashMap<>();
+	private volatile boolean shutdown;
+
+	public WalletRegistry(int maxConcurrentOps, long idleTimeout) {
+		this.maxConcurrentOps = maxConcurrentOps;
+		this.idleTimeout = idleTimeout;
+		scheduleSweep();
+	}
+
+	/**
+	 * 지갑을 열고(이미 열려 있으면 재사용) 작업 자리 하나를 얻는다. 지갑이 없으면 먼저 생성한다.
+	 * 동시 작업 수가 maxConcurrentOps에 도달했으면 자리가 날 때까지 대기한다. 작업이 끝나면 lease를 close해야 한다.
+	 * 이미 다른 credentials로 열린 지갑이면 IllegalArgumentException.
+	 */
+	public WalletLease acquire(String walletConfig, String walletCredentials) throws ExecutionException, InterruptedException {
+		String walletId = new JSONObject(walletConfig).getString("id");
+		JSONObject credentials = new JSONObject(walletCredentials);
+		while (true) {
+			checkNotShutdown();
+			OpenWallet entry = wallets.get(walletId);
+			if (entry == null) {
+				entry = open(walletId, walletConfig, walletCredentials);
+			}
+			if (!entry.credentials.similar(credentials)) {
+				throw new IllegalArgumentException("다른 credentials로 이미 열린 지갑: " + walletId);
+			}
+			CompletableFuture<Void> closing;
+			synchronized (entry) {
+				closing = entry.closing;
+				if (!entry.closed) {
+					entry.active++;
+				}
+			}
+			if (closing != null) {
+				// 닫히는 중인 지갑을 바로 다시 열면 WalletAlreadyOpened가 나므로 닫기가 끝날 때까지 기다린다.
+				waitClosed(closing);
+				continue;
+			}
+			try {
+				entry.permits.acquire();
+			} catch (InterruptedException e) {
+				synchronized (entry) {
+					entry.active--;
+				}
+				throw e;
+			}
+			return new WalletLease(entry);
+		}
+	}
+
+	// 같은 지갑을 두번 열지 않도록 wallet id별로 직렬화한다. 다른 지갑끼리는 서로 막지 않는다.
+	private OpenWallet open(String walletId, String walletConfig, String walletCredentials) throws ExecutionException, InterruptedException {
+		Object lock = openLocks.computeIfAbsent(walletId, id -> new Object());
+		synchronized (lock) {
+			OpenWallet existing = wallets.get(walletId);
+			if (existing != null) {
+				return existing;
+			}
+			try {
+				IndyFutures.get(IndyFutures.call(() -> Wallet.createWallet(walletConfig, walletCredentials)));
+			} catch (ExecutionException e) {
+				if (!(e.getCause() instanceof WalletExistsException)) {
+					throw e;
+				}
+			}
+			Wallet wallet = IndyFutures.get(IndyFutures.call(() -> Wallet.openWallet(walletConfig, walletCredentials)));
+			OpenWallet opened = new OpenWallet(wallet, new JSONObject(walletCredentials), maxConcurrentOps);
+			wallets.put(walletId, opened);
+			// 여는 동안 shutdown이 지나갔으면 아무도 닫지 않으므로 직접 닫고 실패시킨다.
+			if (shutdown) {
+				CompletableFuture<Void> closing;
+				synchronized (opened) {
+					if (!opened.closed) {
+						opened.closed = true;
+						opened.closing = close(walletId, opened);
+					}
+					closing = opened.closing;
+				}
+				waitClosed(closing);
+				checkNotShutdown();
+			}
+			return opened;
+		}
+	}
+
+	private void checkNotShutdown() {
+		if (shutdown) {
+			throw new IllegalStateException("WalletRegistry가 종료됨");
+		}
+	}
+
+	public int getOpenWalletCount() {
+		return wallets.size();
+	}
+
+	private void scheduleSweep() {
+		IndyFutures.delay(Math.max(idleTimeout / 2, 1_000)).thenRun(() -> {
+			if (shutdown) {
+				return;
+			}
+			closeIdleWallets();
+			scheduleSweep();
+		});
+	}
+
+	private void closeIdleWallets() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<String, OpenWallet> candidate : wallets.entrySet()) {
+			String walletId = candidate.getKey();
+			OpenWallet entry = candidate.getValue();
+			synchronized (entry) {
+				if (entry.closed || entry.active > 0 || now - entry.lastUsed < idleTimeout) {
+					continue;
+				}
+				entry.closed = true;
+				entry.closing = close(walletId, entry);
+			}
+		}
+	}
+
+	// closeWallet이 끝난 뒤에 registry에서 뺀다. 그동안 acquire는 closing을 기다린다.
+	private CompletableFuture<Void> close(String walletId, OpenWallet entry) {
+		return IndyFutures.call(entry.wallet::closeWallet).handle((ignored, error) -> {
+			if (error != null) {
+				System.err.println("closeWallet 실패 (" + walletId + "): " + error);
+			}
+			wallets.remove(walletId, entry);
+			return null;
+		});
+	}
+
+	private static void waitClosed(CompletableFuture<Void> closing) throws InterruptedException {
+		try {
+			closing.get();
+		} catch (ExecutionException e) {
+			// close의 handle에서 실패를 처리하므로 여기까지 오지 않는다.
+		}
+	}
+
+	/**
+	 * 열린 지갑을 모두 닫는다. 사용중인 lease가 있어도 닫으므로 프로세스 종료시에만 호출한다.
+	 */
+	public void shutdown() throws ExecutionException, InterruptedException {
+		shutdown = true;
+		for (Map.Entry<String, OpenWallet> candidate : wallets.entrySet()) {
+			OpenWallet entry = candidate.getValue();
+			CompletableFuture<Void> closing;
+			synchronized (entry) {
+				if (!entry.closed) {
+					entry.closed = true;
+					entry.closing = close(candidate.getKey(), entry);
+				}
+				closing = entry.closing;
+			}
+			waitClosed(closing);
+		}
+	}
+}